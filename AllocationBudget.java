@@ -0,0 +1,114 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.IntSupplier;
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: fail the build when the move generation hot path allocates more
+ * than it does now. each operation of BenchmarkCorpus below is warmed up so
+ * the JIT has compiled it, then the bytes allocated per operation are
+ * measured with the thread allocation counter and compared to its budget.
+ * run by gradle check (task allocationBudget), so going over budget fails
+ * the build.
+ *
+ * the budgets are a ratchet: each is pinned to one operation by the bytes
+ * it allocated when the budget was set, lowest and highest of 3 runs, and
+ * only goes down. when an operation allocates less than its lowest, the
+ * check says so and its numbers should be measured again and put in
+ * MEASURED; they are only raised by a change that says why the operation
+ * needs more. bytes depend on what the JIT removes, so the numbers are for
+ * the JDK they were measured on (17.0.9, C2). getLegalMove of Time, Plus
+ * and Sun vary by up to 25% from one JVM run to the next, the others do not
+ *
+ * usage: java AllocationBudget
+ * exits with status 1 if an operation is over budget
+ */
+public class AllocationBudget {
+    private static final int WARMUP_OPERATIONS = 20000;
+    private static final int MEASURE_OPERATIONS = 2000;
+    private static final int MEASURE_RUNS = 3; // lowest run counts, so a GC or JIT event does not fail the build
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static volatile int sink; // results go here so the JIT cannot remove the work
+
+    private static final double HEADROOM = 1.25; // budget = highest bytes measured * HEADROOM
+    private static final double RATCHET = 0.9; // below this share of the lowest bytes measured, print new ones
+
+    // bytes per operation measured when the budget was set, { lowest, highest } of 3 JVM runs
+    private static final Map<String, int[]> MEASURED = new LinkedHashMap<String, int[]>();
+
+    static {
+        MEASURED.put("getLegalMove.Point", new int[] { 394, 394 });
+        MEASURED.put("getLegalMove.Hourglass", new int[] { 728, 728 });
+        MEASURED.put("getLegalMove.Time", new int[] { 1018, 1221 });
+        MEASURED.put("getLegalMove.Plus", new int[] { 1070, 1398 });
+        MEASURED.put("getLegalMove.Sun", new int[] { 6602, 7821 });
+        MEASURED.put("getLegalMoves.opening", new int[] { 16988, 16988 });
+        MEASURED.put("getLegalMoves.middlegame", new int[] { 15270, 15270 });
+        MEASURED.put("getLegalMoves.endgame", new int[] { 6323, 6323 });
+        MEASURED.put("moveUndo.opening", new int[] { 17008, 17008 });
+        MEASURED.put("moveUndo.middlegame", new int[] { 15177, 15177 });
+        MEASURED.put("moveUndo.endgame", new int[] { 7282, 7282 });
+        MEASURED.put("moveUndo.inCheck", new int[] { 29105, 29105 });
+        MEASURED.put("controllerRoundTrip", new int[] { 14380, 14380 });
+        MEASURED.put("stateLoad", new int[] { 110, 110 });
+    }
+
+    /**
+     * bytes per operation allowed for the measured { lowest, highest }
+     */
+    static int getBudget(int[] measured) {
+        return (int) Math.ceil(measured[1] * HEADROOM);
+    }
+
+    /**
+     * bytes allocated by this thread so far
+     */
+    static long getAllocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * run op count times, returns bytes allocated per operation
+     */
+    static double measureAllocation(IntSupplier op, int count) {
+        int result = 0;
+        long start = getAllocatedBytes();
+        for (int i = 0; i < count; i++) {
+            result += op.getAsInt();
+        }
+        long bytes = getAllocatedBytes() - start;
+        sink = result;
+        return (double) bytes / count;
+    }
+
+    public static void main(String[] args) throws Exception {
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        Map<String, IntSupplier> benchmarks = BenchmarkCorpus.createBenchmarks();
+        boolean failed = false;
+
+        System.out.printf("%-26s %10s %10s%n", "operation", "B/op", "budget");
+        for (Map.Entry<String, int[]> measured : MEASURED.entrySet()) {
+            IntSupplier op = benchmarks.get(measured.getKey());
+            measureAllocation(op, WARMUP_OPERATIONS);
+
+            double bytes = Double.MAX_VALUE;
+            for (int i = 0; i < MEASURE_RUNS; i++) {
+                bytes = Math.min(bytes, measureAllocation(op, MEASURE_OPERATIONS));
+            }
+
+            int budget = getBudget(measured.getValue());
+            boolean over = bytes > budget;
+            boolean lower = bytes < measured.getValue()[0] * RATCHET;
+            failed |= over;
+            System.out.printf("%-26s %10.1f %10d%s%n", measured.getKey(), bytes, budget,
+                    over ? "  OVER BUDGET" : lower ? "  allocates less, measure again and lower its budget" : "");
+        }
+
+        if (failed) {
+            System.out.println("allocation budget exceeded");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.IntSupplier;
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: the hot paths of Board and Piece as operations on a fixed
+ * corpus of opening, middlegame and endgame positions, for the JMH
+ * benchmarks of the jmh module and for AllocationBudget.
+ * an operation is an IntSupplier that does one unit of work per call and
+ * returns something from it, so the JIT cannot remove the work
+ */
+public class BenchmarkCorpus {
+    // positions in Board notation, taken from seeded random games
+    static final String[] OPENING = {
+            "xhtsthx/ddddddd/7/7/UUUUUUU/XHTSTHX 1 0 0 0 0",
+            "thxsx1t/dd2ddd/4h2/HUdd2H/U1UUUUU/T1XSX1T 1 2 0 0 6",
+            "thxsxht/dd1dddd/2d1U2/3U1U1/UUU3U/THXSXHT 1 2 0 0 6",
+            "t1xsxht/ddd1ddU/2h4/7/UUUdUU1/THXSXHT 1 2 1 0 6" };
+    static final String[] MIDDLEGAME = {
+            "ths1xt1/5Ud/dUx4/X1UX2H/U2U2U/T1S3T 1 2 0 0 30",
+            "t2xx2/1dsU2d/hU4h/H2SdU1/U2X1T1/T3XH1 1 2 0 0 30",
+            "t4xt/d4Ud/h4sh/Ud1dd1H/1xX3U/THX1S1T 1 2 1 0 30",
+            "1x2s2/d1dtxt1/3Xddd/UU1U1U1/1TU2TU/2XS3 1 2 0 0 30" };
+    static final String[] ENDGAME = {
+            "1s1T1S1/u6/7/7/4t1t/3UhU1 2 1 0 0 101",
+            "7/4t2/4x2/4T1s/uU1S3/7 2 1 0 0 109",
+            "1d5/3S3/1su4/6t/DT4D/7 2 1 0 0 73",
+            "4H2/4h2/S5X/5U1/3t2h/T2s3 2 1 0 0 117",
+            "7/6d/2u2S1/6T/3TsX1/7 2 1 2 0 77" };
+    static final String[] PIECE_NAMES = { "Point", "Hourglass", "Time", "Plus", "Sun" };
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * one operation of each benchmark, by name. benchmarks have their own
+     * boards so one cannot change the positions of another
+     */
+    public static Map<String, IntSupplier> createBenchmarks() throws IOException {
+        Map<String, IntSupplier> benchmarks = new LinkedHashMap<String, IntSupplier>();
+        String[] all = concat(OPENING, MIDDLEGAME, ENDGAME);
+
+        for (String name : PIECE_NAMES) {
+            benchmarks.put("getLegalMove." + name, pieceMoves(all, name));
+        }
+        benchmarks.put("getLegalMoves.opening", allMoves(OPENING));
+        benchmarks.put("getLegalMoves.middlegame", allMoves(MIDDLEGAME));
+        benchmarks.put("getLegalMoves.endgame", allMoves(ENDGAME));
+        benchmarks.put("moveUndo.opening", moveUndo(OPENING, false));
+        benchmarks.put("moveUndo.middlegame", moveUndo(MIDDLEGAME, false));
+        benchmarks.put("moveUndo.endgame", moveUndo(ENDGAME, false));
+        benchmarks.put("moveUndo.inCheck", moveUndo(all, true));
+        benchmarks.put("notation", notation(all));
+        benchmarks.put("stateLoad", stateLoad(all));
+        benchmarks.put("saveLoad", saveLoad(MIDDLEGAME[0]));
+        benchmarks.put("controllerRoundTrip", controllerRoundTrip(all));
+        return benchmarks;
+    }
+
+    /**
+     * the operation of one benchmark, e.g. "getLegalMove.Sun"
+     */
+    public static IntSupplier createBenchmark(String name) throws IOException {
+        IntSupplier op = createBenchmarks().get(name);
+        if (op == null) {
+            throw new IllegalArgumentException("unknown benchmark " + name);
+        }
+        return op;
+    }
+
+    static Board[] loadPositions(String[] corpus) {
+        Board[] boards = new Board[corpus.length];
+        for (int i = 0; i < corpus.length; i++) {
+            boards[i] = new Board();
+            boards[i].setNotation(corpus[i]);
+        }
+        return boards;
+    }
+
+    /**
+     * getLegalMove of every piece named name, one piece per operation
+     */
+    private static IntSupplier pieceMoves(String[] corpus, String name) {
+        List<Board> boards = new ArrayList<Board>();
+        List<Piece> pieces = new ArrayList<Piece>();
+        for (Board b : loadPositions(corpus)) {
+            for (Piece p : b.getBoard()) {
+                if (p.getName().equals(name)) {
+                    boards.add(b);
+                    pieces.add(p);
+                }
+            }
+        }
+        int[] next = { 0 };
+        return () -> {
+            int i = next[0]++ % pieces.size();
+            return pieces.get(i).getLegalMove(boards.get(i)).size();
+        };
+    }
+
+    /**
+     * moves of every piece of the current player, one position per operation
+     */
+    private static IntSupplier allMoves(String[] corpus) {
+        Board[] boards = loadPositions(corpus);
+        int[] next = { 0 };
+        return () -> boards[next[0]++ % boards.length].getLegalMoves().size();
+    }
+
+    /**
+     * make a move with tryMove and take it back, one move per operation.
+     * inCheck uses only positions where the current player is in check,
+     * where each move is tested for leaving the Sun in check
+     */
+    private static IntSupplier moveUndo(String[] corpus, boolean inCheck) {
+        List<Board> boards = new ArrayList<Board>();
+        List<Integer[]> moves = new ArrayList<Integer[]>();
+        for (Board b : loadPositions(corpus)) {
+            if (inCheck && b.getPlayerInCheck() != b.getPlayer()) {
+                continue;
+            }
+            for (Integer[] m : b.getLegalMoves()) {
+                if (b.tryMove(m[0], m[1], m[2], m[3])) { // keep moves that are not refused
+                    b.undoMove();
+                    boards.add(b);
+                    moves.add(m);
+                }
+            }
+        }
+        int[] next = { 0 };
+        return () -> {
+            int i = next[0]++ % moves.size();
+            Board b = boards.get(i);
+            Integer[] m = moves.get(i);
+            b.tryMove(m[0], m[1], m[2], m[3]);
+            b.undoMove();
+            return b.getSumTurn();
+        };
+    }
+
+    private static IntSupplier notation(String[] corpus) {
+        Board board = new Board();
+        StringBuilder text = new StringBuilder(64);
+        int[] next = { 0 };
+        return () -> {
+            board.setNotation(corpus[next[0]++ % corpus.length]);
+            text.setLength(0);
+            board.appendNotation(text);
+            return text.length();
+        };
+    }
+
+    /**
+     * load a packed state into a Board, a different game each operation
+     * like a GameServer thread serving many games
+     */
+    private static IntSupplier stateLoad(String[] corpus) {
+        Board[] boards = loadPositions(corpus);
+        byte[][] states = new byte[boards.length][Board.STATE_SIZE];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i].packState(states[i], 0);
+        }
+        Board board = new Board();
+        int[] next = { 0 };
+        return () -> {
+            board.setState(states[next[0]++ % states.length], 0);
+            return board.getSumTurn();
+        };
+    }
+
+    private static IntSupplier saveLoad(String position) throws IOException {
+        Board board = new Board();
+        board.setNotation(position);
+        BoardSnapshot snapshot = board.snapshot();
+        Path file = Files.createTempFile("TalabiaBenchmark", ".txt");
+        file.toFile().deleteOnExit();
+        return () -> {
+            try {
+                Board.writeSave(snapshot, file.toString());
+                return Board.readSave(file.toString()).size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * select, move and undo through BoardController like the view does
+     */
+    private static IntSupplier controllerRoundTrip(String[] corpus) {
+        List<BoardController> games = new ArrayList<BoardController>();
+        List<Integer[]> moves = new ArrayList<Integer[]>();
+        for (String position : corpus) {
+            BoardAdapter game = new BoardAdapter();
+            game.board.setNotation(position);
+            for (Integer[] m : game.board.getLegalMoves()) {
+                if (game.tryMove(m[0], m[1], m[2], m[3])) {
+                    game.undo();
+                    games.add(game);
+                    moves.add(m);
+                }
+            }
+        }
+        int[] next = { 0 };
+        return () -> {
+            int i = next[0]++ % moves.size();
+            BoardController game = games.get(i);
+            Integer[] m = moves.get(i);
+            int count = game.getMove(m[0], m[1]).size();
+            game.move(m[2], m[3]);
+            game.undo();
+            return count;
+        };
+    }
+
+    private static String[] concat(String[]... corpora) {
+        List<String> all = new ArrayList<String>();
+        for (String[] c : corpora) {
+            all.addAll(Arrays.asList(c));
+        }
+        return all.toArray(new String[0]);
+    }
+}
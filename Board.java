@@ -23,6 +23,21 @@ public class Board {
     private int winner = 0;
     private int turn = 0;
     private int sumTurn = 0;
+    private ArrayDeque<MoveRecord> undoHistory = new ArrayDeque<MoveRecord>();
+    private ArrayDeque<MoveRecord> redoHistory = new ArrayDeque<MoveRecord>();
+    private int[] notationValues = new int[5]; // reused by setNotation
+    private Piece[][] sparePieces = null; // pieces kept for setState, by kind and player
+    private int[] spareCounts = null;
+    private long changedSquares = ALL_SQUARES; // bit (y * 7 + x) set if square changed by last move
+    // events are only made when someone listens. volatile: BoardAdapter
+    // sets it from subscriber threads while the model thread moves
+    private volatile BoardListener listener = null;
+    private static final String RECORD_CODES = ".UDHTXSudhtxs"; // PositionCodec square code to notation
+
+    public static final int STATE_SIZE = 62; // see packState
+    public static final int MAX_PIECES = 28; // pieces at the start, all packState has room for
+
+    public static final long ALL_SQUARES = (1L << 42) - 1;
 
     /**
      * setup the board
@@ -41,6 +56,10 @@ public class Board {
         return sumTurn;
     }
 
+    public int getTurn() {
+        return turn;
+    }
+
     /**
      * setup/reset the board
      * 
@@ -55,6 +74,9 @@ public class Board {
         winner = 0;
         turn = 0;
         sumTurn = 0;
+        undoHistory.clear();
+        redoHistory.clear();
+        changedSquares = ALL_SQUARES;
 
         // set Point piece for p1 and p2
         for (int i = 0; i < 7; i++) {
@@ -83,6 +105,7 @@ public class Board {
         // set Sun for p1 and p2
         board.add(new Sun(1, 3, 0));
         board.add(new Sun(2, 3, 5));
+        fireReplaced();
     }
 
     public Piece getSelectedPiece() {
@@ -127,6 +150,10 @@ public class Board {
      * @author Lau Jun Xing
      */
     public void movePiece(int posX, int posY) {
+        FlightMove event = new FlightMove();
+        event.begin();
+        int checkBefore = playerInCheck; // getValidMove can flag a check
+        changedSquares = 0;
         List<Integer[]> validMoves = getValidMove();
 
         for (Integer[] m : validMoves) { // move piece if valid move, piece selected and sun not in check
@@ -134,16 +161,23 @@ public class Board {
 
                 // check if current player in check
                 if (playerInCheck == player) {
+                    long start = ModelMetrics.start();
                     refreshPlayerInCheck(posX, posY);
+                    ModelMetrics.REFRESH_CHECK.stop(start);
 
                     if (playerInCheck == player) { // if current player still in check, break loop
                         break;
                     }
                 }
 
+                MoveRecord record = new MoveRecord(board.indexOf(selectedPiece), selectedPiece, player, turn,
+                        checkBefore, winner);
+
                 Piece attackedPiece = null;
                 attackedPiece = getPiece(posX, posY);
                 if (attackedPiece != null) { // remove piece if got attacked by selectedPiece
+                    record.captured = attackedPiece;
+                    record.capturedIndex = board.indexOf(attackedPiece);
                     board.remove(attackedPiece);
                 }
 
@@ -159,29 +193,292 @@ public class Board {
                     }
                     selectedPiece.getLegalMove(this); // check if point check sun after turn around
                 }
+                record.toX = posX;
+                record.toY = posY;
+                record.toDirection = selectedPiece.getDirection();
+                markSquare(record.fromX, record.fromY);
+                markSquare(posX, posY);
 
                 // flip board after each player move 2 times
                 turn++;
                 sumTurn++;
 
                 if (turn == 4) {
+                    long switchStart = ModelMetrics.start();
+                    FlightTimePlusSwitch switchEvent = new FlightTimePlusSwitch();
+                    switchEvent.begin();
                     TimePlusSwitch();
+                    switchEvent.record(sumTurn);
+                    ModelMetrics.TIME_PLUS_SWITCH.stop(switchStart);
                     turn = 0;
+                    record.switched = true;
+                    markTimePlusSquares();
                 }
 
                 // check for win. If game not end, switch to next player and flip board
+                long start = ModelMetrics.start();
+                FlightCheckWin checkEvent = new FlightCheckWin();
+                checkEvent.begin();
                 checkWin();
+                checkEvent.record(winner, sumTurn);
+                ModelMetrics.CHECK_WIN.stop(start);
+                ModelMetrics.countMove();
+                if (winner != 0) {
+                    ModelMetrics.countOutcome(winner);
+                }
 
                 if (winner == 0) {
                     flipBoard();
                     togglePlayer();
+                    changedSquares = ALL_SQUARES;
                 }
+
+                record.turnAfter = turn;
+                record.checkAfter = playerInCheck;
+                record.winnerAfter = winner;
+                undoHistory.addLast(record);
+                redoHistory.clear();
+                fireMove(record, selectedPiece.getName());
+                event.record(selectedPiece.getName(), record.player, record.fromX, record.fromY, posX, posY,
+                        record.captured, playerInCheck, sumTurn);
                 break;
             }
         }
         selectedPiece = null;
     }
 
+    /**
+     * select the piece at from and move it to to
+     * returns false if the move was not made.
+     * a refused move leaves playerInCheck as it was, so replaying
+     * only the moves made gives the same game
+     */
+    public boolean tryMove(int fromX, int fromY, int toX, int toY) {
+        int check = playerInCheck;
+        int total = sumTurn;
+        selectedPiece = null;
+        setSelectedPiece(fromX, fromY);
+        movePiece(toX, toY);
+
+        if (sumTurn == total) {
+            playerInCheck = check;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * get moves of every piece of the current player
+     * without changing selectedPiece or playerInCheck.
+     * a move can still be refused by movePiece if it leaves the Sun in check
+     * inner arr(element) of moves format:
+     * [0] = fromX
+     * [1] = fromY
+     * [2] = toX
+     * [3] = toY
+     */
+    public List<Integer[]> getLegalMoves() {
+        List<Integer[]> moves = new ArrayList<Integer[]>();
+        if (winner != 0) {
+            return moves;
+        }
+
+        int check = playerInCheck;
+        for (Piece p : board) {
+            if (p.getPlayer() == player) {
+                long start = ModelMetrics.start();
+                FlightLegalMoves event = new FlightLegalMoves();
+                event.begin();
+                List<Integer[]> pieceMoves = p.getLegalMove(this);
+                event.record(p, pieceMoves.size());
+                ModelMetrics.GET_LEGAL_MOVE.stop(start);
+                for (Integer[] m : pieceMoves) {
+                    Integer[] move = { p.getX(), p.getY(), m[0], m[1] };
+                    moves.add(move);
+                }
+            }
+        }
+        playerInCheck = check;
+        return moves;
+    }
+
+    /**
+     * take back the last move using its undo record.
+     * steps are applied in reverse order of movePiece:
+     * flip back, switch Time/Plus back, restore captured piece,
+     * then move the piece back to its square
+     * 
+     * returns false if there is no move to undo
+     */
+    public boolean undoMove() {
+        MoveRecord record = undoHistory.pollLast();
+        if (record == null) {
+            return false;
+        }
+
+        if (record.winnerAfter == 0) { // board was flipped after the move
+            flipBoard();
+        }
+        if (record.switched) {
+            TimePlusSwitch();
+        }
+        if (record.captured != null) {
+            board.add(record.capturedIndex, record.captured);
+        }
+
+        Piece movedPiece = board.get(record.pieceIndex);
+        movedPiece.setX(record.fromX);
+        movedPiece.setY(record.fromY);
+        movedPiece.setDirection(record.fromDirection);
+        markChangedSquares(record);
+
+        player = record.player;
+        turn = record.turnBefore;
+        sumTurn--;
+        playerInCheck = record.checkBefore;
+        winner = record.winnerBefore;
+        selectedPiece = null;
+
+        redoHistory.addLast(record);
+        fireReplaced();
+        return true;
+    }
+
+    /**
+     * replay the last undone move using its undo record
+     * 
+     * returns false if there is no move to redo
+     */
+    public boolean redoMove() {
+        MoveRecord record = redoHistory.pollLast();
+        if (record == null) {
+            return false;
+        }
+
+        int pieceIndex = record.pieceIndex;
+        if (record.captured != null) {
+            record.captured = board.remove(record.capturedIndex);
+            if (record.capturedIndex < pieceIndex) { // moved piece shifted left by removal
+                pieceIndex--;
+            }
+        }
+
+        Piece movedPiece = board.get(pieceIndex);
+        String pieceName = movedPiece.getName(); // before Time and Plus switch
+        movedPiece.setX(record.toX);
+        movedPiece.setY(record.toY);
+        movedPiece.setDirection(record.toDirection);
+
+        if (record.switched) {
+            TimePlusSwitch();
+        }
+
+        turn = record.turnAfter;
+        sumTurn++;
+        playerInCheck = record.checkAfter;
+        winner = record.winnerAfter;
+        selectedPiece = null;
+        markChangedSquares(record);
+
+        if (winner == 0) {
+            flipBoard();
+            togglePlayer();
+        }
+
+        undoHistory.addLast(record);
+        fireMove(record, pieceName);
+        return true;
+    }
+
+    /**
+     * listener is told about every change to the board, null for none
+     */
+    public void setBoardListener(BoardListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * send the events of a move or redo in one batch
+     */
+    private void fireMove(MoveRecord record, String pieceName) {
+        BoardListener listener = this.listener; // read once, it can change meanwhile
+        if (listener == null) {
+            return;
+        }
+        List<BoardEvent> events = new ArrayList<BoardEvent>(4);
+        events.add(new MoveApplied(sumTurn, record.player, pieceName, record.fromX, record.fromY, record.toX,
+                record.toY, record.toDirection));
+        if (record.captured != null) {
+            events.add(new PieceCaptured(sumTurn, record.captured.getPlayer(), record.captured.getName(),
+                    record.toX, record.toY));
+        }
+        if (record.switched) {
+            events.add(new TimePlusSwitched(sumTurn));
+        }
+        if (record.checkAfter != record.checkBefore) {
+            events.add(new CheckChanged(sumTurn, record.checkAfter));
+        }
+        if (record.winnerAfter == 0) {
+            events.add(new BoardFlipped(sumTurn, player));
+        } else {
+            events.add(new GameOver(sumTurn, record.winnerAfter));
+        }
+        listener.boardChanged(Collections.unmodifiableList(events));
+    }
+
+    private void fireReplaced() {
+        BoardListener listener = this.listener;
+        if (listener != null) {
+            listener.boardChanged(Collections.singletonList(new BoardReplaced(sumTurn)));
+        }
+    }
+
+    /**
+     * get squares changed by the last move, undo, redo or reset
+     * (from and to square, Time/Plus squares when they switch,
+     * every square when the board flips)
+     * inner arr(element) of squares format:
+     * [0] = posX
+     * [1] = posY
+     */
+    public List<Integer[]> getChangedSquares() {
+        List<Integer[]> squares = new ArrayList<Integer[]>(Long.bitCount(changedSquares));
+        for (long bits = changedSquares; bits != 0; bits &= bits - 1) {
+            int square = Long.numberOfTrailingZeros(bits);
+            Integer[] arr = { square % 7, square / 7 };
+            squares.add(arr);
+        }
+        return squares;
+    }
+
+    private void markSquare(int posX, int posY) {
+        changedSquares |= 1L << (posY * 7 + posX);
+    }
+
+    private void markTimePlusSquares() {
+        for (Piece p : board) {
+            if (p.getName().equals("Time") || p.getName().equals("Plus")) {
+                markSquare(p.getX(), p.getY());
+            }
+        }
+    }
+
+    /**
+     * mark squares changed by undoing or redoing a move
+     */
+    private void markChangedSquares(MoveRecord record) {
+        if (record.winnerAfter == 0) { // board flips
+            changedSquares = ALL_SQUARES;
+            return;
+        }
+        changedSquares = 0;
+        markSquare(record.fromX, record.fromY);
+        markSquare(record.toX, record.toY);
+        if (record.switched) {
+            markTimePlusSquares();
+        }
+    }
+
     public int getPlayer() {
         return player;
     }
@@ -216,7 +513,12 @@ public class Board {
         List<Integer[]> moves = new LinkedList<Integer[]>();
         if (selectedPiece != null) {
             if (selectedPiece.getPlayer() == player) {
+                long start = ModelMetrics.start();
+                FlightLegalMoves event = new FlightLegalMoves();
+                event.begin();
                 moves = selectedPiece.getLegalMove(this);
+                event.record(selectedPiece, moves.size());
+                ModelMetrics.GET_LEGAL_MOVE.stop(start);
             }
         }
 
@@ -242,20 +544,22 @@ public class Board {
     private void refreshPlayerInCheck(int newPosX, int newPosY) {
         int x = selectedPiece.getX();
         int y = selectedPiece.getY();
-        selectedPiece.setX(newPosX);
-        selectedPiece.setY(newPosY);
-
         List<Piece> copyBoard = new LinkedList<Piece>(board);
-        if (turn + 1 == 4) {
-            TimePlusSwitch();
-        }
 
+        // find the attacked piece before selectedPiece is on its square, else
+        // getPiece finds selectedPiece itself and takes it off the board
         Piece attackedPiece = null;
         attackedPiece = getPiece(newPosX, newPosY);
         if (attackedPiece != null) { // remove piece if got attacked by selectedPiece
             board.remove(attackedPiece);
         }
 
+        selectedPiece.setX(newPosX);
+        selectedPiece.setY(newPosY);
+        if (turn + 1 == 4) {
+            TimePlusSwitch();
+        }
+
         playerInCheck = 0;
         for (Piece p : board) {
             if (p.getPlayer() != player) {
@@ -328,6 +632,11 @@ public class Board {
             }
         }
 
+        if (enemySun == null) { // opponent's sun was captured
+            winner = player;
+            return;
+        }
+
         togglePlayer(); // switch to opponent to get opponent sun's and opponent's moves
         List<Integer[]> enemySunValidMoves = enemySun.getLegalMove(this);
         List<Integer[]> enemyValidMoves = new LinkedList<Integer[]>();
@@ -358,195 +667,542 @@ public class Board {
     }
 
     /**
-     * saves board, player, winner, turn
-     * 
-     * @author Lim Jun Jie
-     * @author Hong Yoong Shem
+     * take an immutable copy of the pieces and game info.
+     * the copy can be written to disk by another thread while
+     * the game continues
      */
-    public void save() {
-        try {
-            FileWriter fileWriter = new FileWriter("TalabiaSave.txt");
-            fileWriter.write("PieceName:");
-            for (Piece p : board) {
-                fileWriter.write(p.getName() + ",");
-            }
-            fileWriter.write("\n");
+    public BoardSnapshot snapshot() {
+        return new BoardSnapshot(board, player, winner, turn, playerInCheck, sumTurn);
+    }
+
+    /**
+     * replace the pieces and game info with a snapshot.
+     * move history is cleared as it belongs to the replaced game
+     */
+    public void restore(BoardSnapshot snapshot) {
+        board.clear();
+        for (int i = 0; i < snapshot.size(); i++) {
+            int piecePlayer = snapshot.getPiecePlayer(i);
+            int posX = snapshot.getPiecePosX(i);
+            int posY = snapshot.getPiecePosY(i);
+
+            switch (snapshot.getPieceName(i)) {
+                case "Point":
+                    // Point compares direction by reference, so use the literals
+                    String direction = snapshot.getPieceDirection(i).equals("up") ? "up" : "down";
+                    board.add(new Point(piecePlayer, posX, posY, direction));
+                    break;
+
+                case "Hourglass":
+                    board.add(new Hourglass(piecePlayer, posX, posY));
+                    break;
+
+                case "Time":
+                    board.add(new Time(piecePlayer, posX, posY));
+                    break;
+
+                case "Plus":
+                    board.add(new Plus(piecePlayer, posX, posY));
+                    break;
 
-            fileWriter.write("PiecePlayer:");
-            for (Piece p : board) {
-                fileWriter.write(p.getPlayer() + ",");
+                case "Sun":
+                    board.add(new Sun(piecePlayer, posX, posY));
+                    break;
             }
-            fileWriter.write("\n");
+        }
+
+        selectedPiece = null;
+        player = snapshot.getPlayer();
+        winner = snapshot.getWinner();
+        turn = snapshot.getTurn();
+        playerInCheck = snapshot.getPlayerInCheck();
+        sumTurn = snapshot.getSumTurn();
+        undoHistory.clear();
+        redoHistory.clear();
+        changedSquares = ALL_SQUARES;
+        fireReplaced();
+    }
+
+    /**
+     * write the position as one line of notation.
+     * squares are listed from y = 5 to y = 0, left to right, ranks split by '/'
+     * player 1 pieces are upper case, player 2 pieces lower case:
+     * U = Point facing up, D = Point facing down, H = Hourglass,
+     * T = Time, X = Plus, S = Sun, digit = number of empty squares
+     * then: current player, turn, player in check, winner, total turn
+     * e.g. start: xhtsthx/ddddddd/7/7/UUUUUUU/XHTSTHX 1 0 0 0 0
+     */
+    public String toNotation() {
+        StringBuilder text = new StringBuilder(64);
+        appendNotation(text);
+        return text.toString();
+    }
 
-            fileWriter.write("PiecePosX:");
-            for (Piece p : board) {
-                fileWriter.write(p.getX() + ",");
+    /**
+     * append the notation of the position to text
+     */
+    public void appendNotation(StringBuilder text) {
+        Piece[] squares = new Piece[42];
+        for (Piece p : board) {
+            squares[p.getY() * 7 + p.getX()] = p;
+        }
+
+        for (int y = 5; y > -1; y--) {
+            int empty = 0;
+            for (int x = 0; x < 7; x++) {
+                Piece p = squares[y * 7 + x];
+                if (p == null) {
+                    empty++;
+                } else {
+                    if (empty > 0) {
+                        text.append((char) ('0' + empty));
+                        empty = 0;
+                    }
+                    text.append(notationCode(p));
+                }
             }
-            fileWriter.write("\n");
+            if (empty > 0) {
+                text.append((char) ('0' + empty));
+            }
+            if (y > 0) {
+                text.append('/');
+            }
+        }
+
+        text.append(' ').append(player)
+                .append(' ').append(turn)
+                .append(' ').append(playerInCheck)
+                .append(' ').append(winner)
+                .append(' ').append(sumTurn);
+    }
 
-            fileWriter.write("PiecePosY:");
-            for (Piece p : board) {
-                fileWriter.write(p.getY() + ",");
+    /**
+     * set the position from one line of notation (see toNotation).
+     * the text is read in place, only the pieces are created.
+     * the board is not changed if the notation is invalid: bad squares or
+     * fields, a field out of range, or a player without exactly one Sun
+     * (the loser of a finished game may have none), or more than MAX_PIECES.
+     * pieces are listed square by square, not in the order of the game.
+     * check is found by going through the list, so after some moves the
+     * player in check can differ from a board that played to this position;
+     * packState keeps the order where that matters
+     */
+    public void setNotation(CharSequence text) {
+        int length = text.length();
+
+        // check the pieces part before touching the board
+        int end = 0;
+        int x = 0;
+        int y = 5;
+        int suns1 = 0;
+        int suns2 = 0;
+        int pieces = 0;
+        for (; end < length && text.charAt(end) != ' '; end++) {
+            char c = text.charAt(end);
+            if (c == '/') {
+                if (x != 7 || y == 0) {
+                    throw new IllegalArgumentException("bad rank in notation: " + text);
+                }
+                x = 0;
+                y--;
+            } else if (c > '0' && c < '8') {
+                x += c - '0';
+            } else if ("UDHTXSudhtxs".indexOf(c) > -1) {
+                if (c == 'S') {
+                    suns1++;
+                } else if (c == 's') {
+                    suns2++;
+                }
+                pieces++;
+                x++;
+            } else {
+                throw new IllegalArgumentException("bad piece '" + c + "' in notation: " + text);
+            }
+            if (x > 7) {
+                throw new IllegalArgumentException("rank too long in notation: " + text);
             }
-            fileWriter.write("\n");
+        }
+        if (x != 7 || y != 0) {
+            throw new IllegalArgumentException("notation must have 6 ranks of 7 squares: " + text);
+        }
+        if (pieces > MAX_PIECES) {
+            throw new IllegalArgumentException("more than " + MAX_PIECES + " pieces in notation: " + text);
+        }
 
-            fileWriter.write("PieceDirection:");
-            for (Piece p : board) {
-                if (p.getDirection().length() > 0) {
-                    fileWriter.write(p.getDirection() + ",");
+        // read player, turn, player in check, winner, total turn
+        int[] values = notationValues;
+        int field = 0;
+        int value = 0;
+        boolean negative = false;
+        boolean digits = false;
+        for (int i = end; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            if (c == ' ') {
+                if (negative && !digits) {
+                    throw new IllegalArgumentException("bad field in notation: " + text);
+                } else if (digits) {
+                    if (field == 5) {
+                        throw new IllegalArgumentException("too many fields in notation: " + text);
+                    }
+                    values[field] = negative ? -value : value;
+                    field++;
                 }
+                value = 0;
+                negative = false;
+                digits = false;
+            } else if (c == '-' && !digits && !negative) {
+                negative = true;
+            } else if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits = true;
+            } else {
+                throw new IllegalArgumentException("bad field in notation: " + text);
+            }
+        }
+        if (field != 5) {
+            throw new IllegalArgumentException("notation needs 5 fields after the pieces: " + text);
+        }
+        if (values[0] < 1 || values[0] > 2 || values[1] < 0 || values[1] > 3 || values[2] < 0 || values[2] > 2
+                || values[3] < -1 || values[3] > 2 || values[4] < 0) {
+            throw new IllegalArgumentException("field out of range in notation: " + text);
+        }
+        if (suns1 > 1 || suns2 > 1 || (suns1 == 0 && values[3] != 2) || (suns2 == 0 && values[3] != 1)) {
+            throw new IllegalArgumentException("each player needs one Sun in notation: " + text);
+        }
+
+        board.clear();
+        x = 0;
+        y = 5;
+        for (int i = 0; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '/') {
+                x = 0;
+                y--;
+            } else if (c > '0' && c < '8') {
+                x += c - '0';
+            } else {
+                board.add(newPiece(c, x, y));
+                x++;
+            }
+        }
+
+        selectedPiece = null;
+        player = values[0];
+        turn = values[1];
+        playerInCheck = values[2];
+        winner = values[3];
+        sumTurn = values[4];
+        undoHistory.clear();
+        redoHistory.clear();
+        changedSquares = ALL_SQUARES;
+        fireReplaced();
+    }
+
+    /**
+     * write the game to state at offset in STATE_SIZE bytes:
+     * [0..55] = pieces in list order, 2 bytes each: square (y * 7 + x),
+     * PositionCodec square code. code 0 ends the list
+     * [56] = bit 0: current player - 1, bits 1-2: turn, bits 3-4: player in check
+     * [57] = winner, [58..61] = total turn (big endian)
+     * list order is kept because check detection depends on it.
+     * throws IllegalStateException if there are more than MAX_PIECES pieces
+     */
+    public void packState(byte[] state, int offset) {
+        if (board.size() > MAX_PIECES) {
+            throw new IllegalStateException(board.size() + " pieces do not fit in a state");
+        }
+        java.util.Arrays.fill(state, offset, offset + STATE_SIZE, (byte) 0);
+        int i = offset;
+        for (Piece p : board) {
+            state[i++] = (byte) (p.getY() * 7 + p.getX());
+            state[i++] = (byte) PositionCodec.squareCode(p);
+        }
+        state[offset + 56] = (byte) ((player - 1) | (turn << 1) | (playerInCheck << 3));
+        state[offset + 57] = (byte) winner;
+        state[offset + 58] = (byte) (sumTurn >> 24);
+        state[offset + 59] = (byte) (sumTurn >> 16);
+        state[offset + 60] = (byte) (sumTurn >> 8);
+        state[offset + 61] = (byte) sumTurn;
+    }
+
+    /**
+     * replace the game with one written by packState.
+     * move history is cleared. the pieces on the board and the nodes of
+     * its list are reused for the pieces of the state, and pieces left
+     * over are kept for later states (at most MAX_PIECES of each kind), so
+     * loading the states of many games soon allocates nothing
+     */
+    public void setState(byte[] state, int offset) {
+        if (sparePieces == null) {
+            sparePieces = new Piece[10][MAX_PIECES];
+            spareCounts = new int[10];
+        }
+        for (Piece p : board) {
+            int kind = getSpareKind(PositionCodec.squareCode(p));
+            if (spareCounts[kind] < MAX_PIECES) {
+                sparePieces[kind][spareCounts[kind]++] = p;
+            }
+        }
+
+        ListIterator<Piece> pieces = board.listIterator();
+        for (int i = offset; i < offset + 56 && state[i + 1] != 0; i += 2) {
+            int square = state[i];
+            Piece p = takeSpare(state[i + 1], square % 7, square / 7);
+            if (pieces.hasNext()) {
+                pieces.next();
+                pieces.set(p);
+            } else {
+                pieces.add(p);
             }
-            fileWriter.write("\n");
+        }
+        while (pieces.hasNext()) {
+            pieces.next();
+            pieces.remove();
+        }
+
+        int info = state[offset + 56];
+        selectedPiece = null;
+        player = (info & 1) + 1;
+        turn = (info >> 1) & 3;
+        playerInCheck = (info >> 3) & 3;
+        winner = state[offset + 57];
+        sumTurn = getSumTurn(state, offset);
+        undoHistory.clear();
+        redoHistory.clear();
+        changedSquares = ALL_SQUARES;
+        fireReplaced();
+    }
+
+    /**
+     * pool of a PositionCodec square code: Point, Hourglass, Time, Plus,
+     * Sun of player 1, then of player 2. both Point directions share one
+     */
+    private static int getSpareKind(int code) {
+        int kind = (code - 1) % 6;
+        return (kind == 0 ? 0 : kind - 1) + (code > 6 ? 5 : 0);
+    }
 
-            fileWriter.write("CurrentPlayer:" + player + "\n");
-            fileWriter.write("Winner:" + winner + "\n");
-            fileWriter.write("Turn:" + turn + "\n");
-            fileWriter.write("PlayerInCheck:" + playerInCheck + "\n");
-            fileWriter.write("SumTurn:" + sumTurn);
+    /**
+     * a piece for a square code of a state, from the spares if there is one
+     */
+    private Piece takeSpare(int code, int posX, int posY) {
+        int kind = getSpareKind(code);
+        if (spareCounts[kind] == 0) {
+            return newPiece(RECORD_CODES.charAt(code), posX, posY);
+        }
+        Piece p = sparePieces[kind][--spareCounts[kind]];
+        sparePieces[kind][spareCounts[kind]] = null;
+        p.setX(posX);
+        p.setY(posY);
+        if (kind % 5 == 0) { // Point
+            p.setDirection((code - 1) % 6 == 0 ? "up" : "down");
+        }
+        return p;
+    }
+
+    /**
+     * total turn of a state written by packState
+     */
+    static int getSumTurn(byte[] state, int offset) {
+        return (state[offset + 58] & 0xFF) << 24 | (state[offset + 59] & 0xFF) << 16
+                | (state[offset + 60] & 0xFF) << 8 | (state[offset + 61] & 0xFF);
+    }
 
-            fileWriter.close();
+    /**
+     * notation letter of a piece
+     */
+    static char notationCode(Piece p) {
+        char code;
+        switch (p.getName()) {
+            case "Point":
+                code = p.getDirection().equals("up") ? 'U' : 'D';
+                break;
+            case "Hourglass":
+                code = 'H';
+                break;
+            case "Time":
+                code = 'T';
+                break;
+            case "Plus":
+                code = 'X';
+                break;
+            default:
+                code = 'S';
+                break;
+        }
+        return p.getPlayer() == 1 ? code : Character.toLowerCase(code);
+    }
+
+    /**
+     * create a piece from its notation letter
+     */
+    static Piece newPiece(char code, int posX, int posY) {
+        int piecePlayer = Character.isUpperCase(code) ? 1 : 2;
+        switch (Character.toUpperCase(code)) {
+            case 'U':
+                return new Point(piecePlayer, posX, posY, "up");
+            case 'D':
+                return new Point(piecePlayer, posX, posY, "down");
+            case 'H':
+                return new Hourglass(piecePlayer, posX, posY);
+            case 'T':
+                return new Time(piecePlayer, posX, posY);
+            case 'X':
+                return new Plus(piecePlayer, posX, posY);
+            case 'S':
+                return new Sun(piecePlayer, posX, posY);
+        }
+        throw new IllegalArgumentException("bad piece '" + code + "'");
+    }
+
+    /**
+     * saves board, player, winner, turn
+     * 
+     * @author Lim Jun Jie
+     * @author Hong Yoong Shem
+     */
+    public void save() {
+        try {
+            writeSave(snapshot(), "TalabiaSave.txt");
         } catch (Exception e) {
             System.out.println(e);
         }
     }
 
     /**
-     * loads board, player, winner, turn
+     * write a snapshot to a save file
      * 
      * @author Lim Jun Jie
      * @author Hong Yoong Shem
      */
-    public void load() {
-        try {
-            int line = 0;
-            LinkedList<String> pieceName = new LinkedList<String>();
-            LinkedList<Integer> piecePlayer = new LinkedList<Integer>();
-            LinkedList<Integer> piecePosX = new LinkedList<Integer>();
-            LinkedList<Integer> piecePosY = new LinkedList<Integer>();
-            LinkedList<String> pieceDirection = new LinkedList<String>();
-
-            String data = Files.readAllLines(Paths.get("TalabiaSave.txt")).get(line);
-            data = data.replace("PieceName:", "");
-            String filteredData = "";
-            for (int i = 0; i < data.length(); i++) {
-                filteredData = filteredData + data.charAt(i);
-                if (data.charAt(i) == ',') {
-                    filteredData = filteredData.replace(",", "");
-                    pieceName.add(filteredData);
-                    filteredData = "";
-                }
-            }
-            line++;
-
-            data = Files.readAllLines(Paths.get("TalabiaSave.txt")).get(line);
-            data = data.replace("PiecePlayer:", "");
-            filteredData = "";
-            for (int i = 0; i < data.length(); i++) {
-                filteredData = filteredData + data.charAt(i);
-                if (data.charAt(i) == ',') {
-                    filteredData = filteredData.replace(",", "");
-                    piecePlayer.add(Integer.valueOf(filteredData));
-                    filteredData = "";
-                }
-            }
-            line++;
-
-            data = Files.readAllLines(Paths.get("TalabiaSave.txt")).get(line);
-            data = data.replace("PiecePosX:", "");
-            filteredData = "";
-            for (int i = 0; i < data.length(); i++) {
-                filteredData = filteredData + data.charAt(i);
-                if (data.charAt(i) == ',') {
-                    filteredData = filteredData.replace(",", "");
-                    piecePosX.add(Integer.valueOf(filteredData));
-                    filteredData = "";
-                }
-            }
-            line++;
-
-            data = Files.readAllLines(Paths.get("TalabiaSave.txt")).get(line);
-            data = data.replace("PiecePosY:", "");
-            filteredData = "";
-            for (int i = 0; i < data.length(); i++) {
-                filteredData = filteredData + data.charAt(i);
-                if (data.charAt(i) == ',') {
-                    filteredData = filteredData.replace(",", "");
-                    piecePosY.add(Integer.valueOf(filteredData));
-                    filteredData = "";
-                }
-            }
-            line++;
-
-            data = Files.readAllLines(Paths.get("TalabiaSave.txt")).get(line);
-            data = data.replace("PieceDirection:", "");
-            filteredData = "";
-            for (int i = 0; i < data.length(); i++) {
-                filteredData = filteredData + data.charAt(i);
-                if (data.charAt(i) == ',') {
-                    filteredData = filteredData.replace(",", "");
-                    pieceDirection.add(filteredData);
-                    filteredData = "";
-                }
-            }
-            line++;
-
-            data = Files.readAllLines(Paths.get("TalabiaSave.txt")).get(line);
-            data = data.replace("CurrentPlayer:", "");
-            player = Integer.parseInt(data);
-            line++;
-
-            data = Files.readAllLines(Paths.get("TalabiaSave.txt")).get(line);
-            data = data.replace("Winner:", "");
-            winner = Integer.parseInt(data);
-            line++;
-
-            data = Files.readAllLines(Paths.get("TalabiaSave.txt")).get(line);
-            data = data.replace("Turn:", "");
-            turn = Integer.parseInt(data);
-            line++;
-
-            data = Files.readAllLines(Paths.get("TalabiaSave.txt")).get(line);
-            data = data.replace("PlayerInCheck:", "");
-            playerInCheck = Integer.parseInt(data);
-            line++;
-
-            data = Files.readAllLines(Paths.get("TalabiaSave.txt")).get(line);
-            data = data.replace("SumTurn:", "");
-            sumTurn = Integer.parseInt(data);
-
-            // loading board according to save data
-            board.clear();
-            int directionIndex = 0;
-            for (int i = 0; i < pieceName.size(); i++) {
-                switch (pieceName.get(i)) {
-                    case "Point":
-                        board.add(new Point(piecePlayer.get(i), piecePosX.get(i), piecePosY.get(i),
-                                pieceDirection.get(directionIndex)));
-                        directionIndex++;
-                        break;
+    public static void writeSave(BoardSnapshot snapshot, String fileName) throws IOException {
+        long start = ModelMetrics.start();
+        FlightSaveFile event = new FlightSaveFile();
+        event.begin();
+        FileWriter fileWriter = new FileWriter(fileName);
+        fileWriter.write("PieceName:");
+        for (int i = 0; i < snapshot.size(); i++) {
+            fileWriter.write(snapshot.getPieceName(i) + ",");
+        }
+        fileWriter.write("\n");
 
-                    case "Hourglass":
-                        board.add(new Hourglass(piecePlayer.get(i), piecePosX.get(i), piecePosY.get(i)));
-                        break;
+        fileWriter.write("PiecePlayer:");
+        for (int i = 0; i < snapshot.size(); i++) {
+            fileWriter.write(snapshot.getPiecePlayer(i) + ",");
+        }
+        fileWriter.write("\n");
 
-                    case "Time":
-                        board.add(new Time(piecePlayer.get(i), piecePosX.get(i), piecePosY.get(i)));
-                        break;
+        fileWriter.write("PiecePosX:");
+        for (int i = 0; i < snapshot.size(); i++) {
+            fileWriter.write(snapshot.getPiecePosX(i) + ",");
+        }
+        fileWriter.write("\n");
 
-                    case "Plus":
-                        board.add(new Plus(piecePlayer.get(i), piecePosX.get(i), piecePosY.get(i)));
-                        break;
+        fileWriter.write("PiecePosY:");
+        for (int i = 0; i < snapshot.size(); i++) {
+            fileWriter.write(snapshot.getPiecePosY(i) + ",");
+        }
+        fileWriter.write("\n");
 
-                    case "Sun":
-                        board.add(new Sun(piecePlayer.get(i), piecePosX.get(i), piecePosY.get(i)));
-                        break;
-                }
+        fileWriter.write("PieceDirection:");
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.getPieceDirection(i).length() > 0) {
+                fileWriter.write(snapshot.getPieceDirection(i) + ",");
             }
+        }
+        fileWriter.write("\n");
+
+        fileWriter.write("CurrentPlayer:" + snapshot.getPlayer() + "\n");
+        fileWriter.write("Winner:" + snapshot.getWinner() + "\n");
+        fileWriter.write("Turn:" + snapshot.getTurn() + "\n");
+        fileWriter.write("PlayerInCheck:" + snapshot.getPlayerInCheck() + "\n");
+        fileWriter.write("SumTurn:" + snapshot.getSumTurn());
+
+        fileWriter.close();
+        event.record(fileName, false);
+        ModelMetrics.SAVE.stop(start);
+    }
+
+    /**
+     * loads board, player, winner, turn
+     * 
+     * @author Lim Jun Jie
+     * @author Hong Yoong Shem
+     */
+    public void load() {
+        try {
+            restore(readSave("TalabiaSave.txt"));
         } catch (Exception e) {
             System.out.println(e);
         }
     }
 
+    /**
+     * read a save file into a snapshot
+     * 
+     * @author Lim Jun Jie
+     * @author Hong Yoong Shem
+     */
+    public static BoardSnapshot readSave(String fileName) throws IOException {
+        long start = ModelMetrics.start();
+        FlightSaveFile event = new FlightSaveFile();
+        event.begin();
+        List<String> lines = Files.readAllLines(Paths.get(fileName));
+        List<String> pieceName = readSaveLine(lines.get(0), "PieceName:");
+        List<String> piecePlayer = readSaveLine(lines.get(1), "PiecePlayer:");
+        List<String> piecePosX = readSaveLine(lines.get(2), "PiecePosX:");
+        List<String> piecePosY = readSaveLine(lines.get(3), "PiecePosY:");
+        List<String> pieceDirection = readSaveLine(lines.get(4), "PieceDirection:");
+
+        int size = pieceName.size();
+        String[] names = new String[size];
+        int[] players = new int[size];
+        int[] posX = new int[size];
+        int[] posY = new int[size];
+        String[] directions = new String[size];
+        int directionIndex = 0;
+        for (int i = 0; i < size; i++) {
+            names[i] = pieceName.get(i);
+            players[i] = Integer.parseInt(piecePlayer.get(i));
+            posX[i] = Integer.parseInt(piecePosX.get(i));
+            posY[i] = Integer.parseInt(piecePosY.get(i));
+            if (names[i].equals("Point")) { // only Point saves a direction
+                directions[i] = pieceDirection.get(directionIndex);
+                directionIndex++;
+            } else {
+                directions[i] = "";
+            }
+        }
+
+        BoardSnapshot snapshot = new BoardSnapshot(names, players, posX, posY, directions,
+                Integer.parseInt(lines.get(5).replace("CurrentPlayer:", "")),
+                Integer.parseInt(lines.get(6).replace("Winner:", "")),
+                Integer.parseInt(lines.get(7).replace("Turn:", "")),
+                Integer.parseInt(lines.get(8).replace("PlayerInCheck:", "")),
+                Integer.parseInt(lines.get(9).replace("SumTurn:", "")));
+        event.record(fileName, true);
+        ModelMetrics.LOAD.stop(start);
+        return snapshot;
+    }
+
+    /**
+     * split one comma separated line of the save file
+     */
+    private static List<String> readSaveLine(String data, String label) {
+        List<String> values = new LinkedList<String>();
+        data = data.replace(label, "");
+        String filteredData = "";
+        for (int i = 0; i < data.length(); i++) {
+            filteredData = filteredData + data.charAt(i);
+            if (data.charAt(i) == ',') {
+                filteredData = filteredData.replace(",", "");
+                values.add(filteredData);
+                filteredData = "";
+            }
+        }
+        return values;
+    }
+
     // REMOVE ALL METHODS BELOW, TESTING ONLY
     public void addPiece(Piece p) {
         board.add(p);
@@ -555,4 +1211,42 @@ public class Board {
     public void clearBoard() {
         board.clear();
     }
+}
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: undo record of one move made by Board.movePiece.
+ * pieces are stored by their index in the board list because
+ * TimePlusSwitch replaces Time and Plus pieces with new objects
+ */
+class MoveRecord {
+    int pieceIndex;
+    int fromX;
+    int fromY;
+    String fromDirection;
+    int toX;
+    int toY;
+    String toDirection;
+    Piece captured = null;
+    int capturedIndex = -1;
+    boolean switched = false;
+
+    int player;
+    int turnBefore;
+    int checkBefore;
+    int winnerBefore;
+    int turnAfter;
+    int checkAfter;
+    int winnerAfter;
+
+    MoveRecord(int pieceIndex, Piece piece, int player, int turn, int playerInCheck, int winner) {
+        this.pieceIndex = pieceIndex;
+        this.fromX = piece.getX();
+        this.fromY = piece.getY();
+        this.fromDirection = piece.getDirection();
+        this.player = player;
+        this.turnBefore = turn;
+        this.checkBefore = playerInCheck;
+        this.winnerBefore = winner;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,314 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * Part in MVC design pattern: View
+ * Purpose: draw the whole board in one component instead of 42 buttons.
+ * squares are drawn into a back buffer only when they change, and the
+ * buffer is copied to the screen in one call. clicks are turned into a
+ * square with arithmetic and sent to the tile listener like a button click.
+ * a moved piece can slide to its new square before the board is redrawn
+ */
+public class BoardCanvas extends JComponent {
+    private static final long serialVersionUID = 1L;
+    private static final int ANIMATION_MILLIS = 180;
+    private static final Color GRID_COLOUR = Color.BLACK;
+    private static final Color TILE_COLOUR = new Color(238, 238, 238);
+
+    private CanvasTile[] tiles = new CanvasTile[42]; // index = y * 7 + x
+    private Color[] colours = new Color[42];
+    private Icon[] icons = new Icon[42];
+    private long dirtySquares = Board.ALL_SQUARES;
+    private BufferedImage buffer = null;
+    private double bufferScale = 1;
+
+    // sliding piece, shown while animationTimer runs
+    private Timer animationTimer = new Timer(1000 / 60, e -> stepAnimation());
+    private Icon animationIcon = null;
+    private int animationFrom;
+    private int animationTo;
+    private long animationStart;
+    private Runnable animationDone;
+    private Rectangle animationBounds = null;
+
+    /**
+     * listener is called with a CanvasTile as source when a square is clicked
+     */
+    public BoardCanvas(ActionListener listener) {
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (isAnimating() || e.getX() >= getWidth() || e.getY() >= getHeight()) {
+                    return;
+                }
+                int x = e.getX() * 7 / getWidth();
+                int y = 5 - e.getY() * 6 / getHeight();
+                CanvasTile t = tiles[y * 7 + x];
+                if (t != null) {
+                    listener.actionPerformed(new ActionEvent(t, ActionEvent.ACTION_PERFORMED, "tile"));
+                }
+            }
+        });
+    }
+
+    /**
+     * tile creator for the Prototype registry in BoardView
+     */
+    public TilePrototype getTileCreator() {
+        return new CanvasTile(this, -1, -1);
+    }
+
+    void addTile(CanvasTile t) {
+        tiles[t.getY() * 7 + t.getX()] = t;
+    }
+
+    /**
+     * width of one square in device pixels, used to scale piece images
+     */
+    public int getCellWidth() {
+        return (int) (getWidth() * getDeviceScale() / 7);
+    }
+
+    /**
+     * height of one square in device pixels, used to scale piece images
+     */
+    public int getCellHeight() {
+        return (int) (getHeight() * getDeviceScale() / 6);
+    }
+
+    /**
+     * pixels per unit of the screen the canvas is on, above 1 on HiDPI screens
+     */
+    private double getDeviceScale() {
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        return config == null ? 1 : config.getDefaultTransform().getScaleX();
+    }
+
+    void setColour(int posX, int posY, Color colour) {
+        int square = posY * 7 + posX;
+        if (colours[square] != colour) {
+            colours[square] = colour;
+            markDirty(square);
+        }
+    }
+
+    void setIcon(int posX, int posY, Icon icon) {
+        int square = posY * 7 + posX;
+        if (icons[square] != icon) {
+            icons[square] = icon;
+            markDirty(square);
+        }
+    }
+
+    private void markDirty(int square) {
+        dirtySquares |= 1L << square;
+        repaint(getCellBounds(square));
+    }
+
+    /**
+     * bounds of a square in component coordinates
+     */
+    private Rectangle getCellBounds(int square) {
+        int column = square % 7;
+        int row = 5 - square / 7;
+        int left = column * getWidth() / 7;
+        int top = row * getHeight() / 6;
+        return new Rectangle(left, top, (column + 1) * getWidth() / 7 - left, (row + 1) * getHeight() / 6 - top);
+    }
+
+    public boolean isAnimating() {
+        return animationTimer.isRunning();
+    }
+
+    /**
+     * slide the piece on from to to, then run done.
+     * done is expected to redraw the board with the new position
+     */
+    public void animateMove(int fromX, int fromY, int toX, int toY, Runnable done) {
+        animationFrom = fromY * 7 + fromX;
+        animationTo = toY * 7 + toX;
+        animationIcon = icons[animationFrom];
+        animationDone = done;
+        if (animationIcon == null || !isShowing()) {
+            done.run();
+            return;
+        }
+
+        setIcon(fromX, fromY, null); // piece is drawn by the animation instead
+        animationStart = System.nanoTime();
+        animationBounds = null;
+        animationTimer.start();
+    }
+
+    private void stepAnimation() {
+        if (animationBounds != null) {
+            repaint(animationBounds);
+        }
+        if (getAnimationProgress() >= 1) {
+            animationTimer.stop();
+            animationIcon = null;
+            animationBounds = null;
+            animationDone.run();
+        } else {
+            animationBounds = getAnimationBounds();
+            repaint(animationBounds);
+        }
+    }
+
+    private double getAnimationProgress() {
+        return Math.min(1, (System.nanoTime() - animationStart) / (ANIMATION_MILLIS * 1e6));
+    }
+
+    private Rectangle getAnimationBounds() {
+        Rectangle from = getCellBounds(animationFrom);
+        Rectangle to = getCellBounds(animationTo);
+        double t = getAnimationProgress();
+        t = t * t * (3 - 2 * t); // ease in and out
+        return new Rectangle((int) (from.x + (to.x - from.x) * t), (int) (from.y + (to.y - from.y) * t),
+                from.width, from.height);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g;
+        double scale = g2.getDeviceConfiguration().getDefaultTransform().getScaleX(); // HiDPI
+        int bufferWidth = (int) Math.ceil(getWidth() * scale);
+        int bufferHeight = (int) Math.ceil(getHeight() * scale);
+        if (bufferWidth <= 0 || bufferHeight <= 0) {
+            return;
+        }
+
+        if (buffer == null || buffer.getWidth() != bufferWidth || buffer.getHeight() != bufferHeight) {
+            buffer = new BufferedImage(bufferWidth, bufferHeight, BufferedImage.TYPE_INT_RGB);
+            bufferScale = scale;
+            dirtySquares = Board.ALL_SQUARES;
+        }
+        if (dirtySquares != 0) {
+            drawDirtySquares();
+        }
+
+        g2.drawImage(buffer, 0, 0, getWidth(), getHeight(), null);
+
+        if (animationIcon != null && animationBounds != null) {
+            drawIcon(g2, animationIcon, animationBounds);
+        }
+    }
+
+    /**
+     * draw changed squares into the back buffer
+     */
+    private void drawDirtySquares() {
+        Graphics2D g = buffer.createGraphics();
+        g.setTransform(AffineTransform.getScaleInstance(bufferScale, bufferScale));
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        for (long bits = dirtySquares; bits != 0; bits &= bits - 1) {
+            int square = Long.numberOfTrailingZeros(bits);
+            Rectangle cell = getCellBounds(square);
+
+            g.setColor(colours[square] != null ? colours[square] : TILE_COLOUR);
+            g.fillRect(cell.x, cell.y, cell.width, cell.height);
+            g.setColor(GRID_COLOUR);
+            g.drawRect(cell.x, cell.y, cell.width - 1, cell.height - 1);
+            if (icons[square] != null) {
+                drawIcon(g, icons[square], cell);
+            }
+        }
+        dirtySquares = 0;
+        g.dispose();
+    }
+
+    /**
+     * draw an icon centred in cell. icons are scaled in device pixels,
+     * so they are drawn at 1 / scale to stay sharp on HiDPI screens
+     */
+    private void drawIcon(Graphics2D g, Icon icon, Rectangle cell) {
+        int width = (int) (icon.getIconWidth() / bufferScale);
+        int height = (int) (icon.getIconHeight() / bufferScale);
+        int left = cell.x + (cell.width - width) / 2;
+        int top = cell.y + (cell.height - height) / 2;
+
+        if (icon instanceof ImageIcon) {
+            g.drawImage(((ImageIcon) icon).getImage(), left, top, width, height, null);
+        } else {
+            Graphics2D iconGraphics = (Graphics2D) g.create();
+            iconGraphics.translate(left, top);
+            iconGraphics.scale(1 / bufferScale, 1 / bufferScale);
+            icon.paintIcon(this, iconGraphics, 0, 0);
+            iconGraphics.dispose();
+        }
+    }
+}
+
+/**
+ * Part in MVC design pattern: View
+ * View's design pattern: Prototype
+ * Part in View design pattern: Concrete prototype
+ * Purpose: a square of BoardCanvas that BoardView can use like a Tile.
+ * colour and image are stored in the canvas, which draws all squares
+ */
+class CanvasTile implements TilePrototype {
+    private BoardCanvas canvas;
+    private int posX;
+    private int posY;
+
+    CanvasTile(BoardCanvas canvas, int posX, int posY) {
+        this.canvas = canvas;
+        this.posX = posX;
+        this.posY = posY;
+    }
+
+    /**
+     * returns a tile for (posX, posY) on the same canvas
+     */
+    public TilePrototype clone(int posX, int posY) {
+        CanvasTile t = new CanvasTile(canvas, posX, posY);
+        canvas.addTile(t);
+        return t;
+    }
+
+    public int getX() {
+        return posX;
+    }
+
+    public int getY() {
+        return posY;
+    }
+
+    /**
+     * canvas tiles are drawn by the canvas, so there is no button
+     */
+    public JButton getButton() {
+        return null;
+    }
+
+    public void setX(int posX) {
+        this.posX = posX;
+    }
+
+    public void setY(int posY) {
+        this.posY = posY;
+    }
+
+    public void setColor(Color colour) {
+        canvas.setColour(posX, posY, colour);
+    }
+
+    public void setImage(String pieceImagePath) {
+        canvas.setIcon(posX, posY, pieceImagePath == null ? null : new ImageIcon(pieceImagePath));
+    }
+
+    public void setIcon(Icon icon) {
+        canvas.setIcon(posX, posY, icon);
+    }
+
+    /**
+     * clicks are sent by the canvas
+     */
+    public ActionListener getActionListener() {
+        return null;
+    }
+}
@@ -1,4 +1,7 @@
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Part in MVC design pattern: Controller
@@ -15,10 +18,22 @@ public interface BoardController {
 
     public void move(int posX, int posY);
 
+    public boolean tryMove(int fromX, int fromY, int toX, int toY);
+
     public List<Piece> getBoard();
 
+    public BoardSnapshot getSnapshot();
+
     public List<Integer[]> getMove(int posX, int posY);
 
+    public List<Integer[]> getLegalMoves();
+
+    public void setOpeningBook(OpeningBook book);
+
+    public Integer[] getBookMove();
+
+    public List<Integer[]> getChangedSquares();
+
     public int getWinner();
 
     public void resetGame();
@@ -27,6 +42,22 @@ public interface BoardController {
 
     public void loadGame();
 
+    public CompletableFuture<Void> saveGameAsync();
+
+    public CompletableFuture<Void> loadGameAsync(Executor applyExecutor);
+
+    public void setAutosave(int moves);
+
+    public boolean undo();
+
+    public boolean redo();
+
+    public void addBoardListener(BoardListener listener);
+
+    public void removeBoardListener(BoardListener listener);
+
+    public Flow.Publisher<List<BoardEvent>> getEventPublisher();
+
     public int getPlayer();
 
     public int getPlayerInCheck();
@@ -53,7 +84,20 @@ public interface BoardController {
  * player to use methods Model class in MVC
  */
 class BoardAdapter implements BoardController {
+    // one daemon thread keeps save files written in order without blocking the game
+    private static final ExecutorService fileExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Talabia-save");
+        t.setDaemon(true);
+        return t;
+    });
+
     Board board = new Board();
+    private int autosaveMoves = 0;
+    private AtomicReference<BoardSnapshot> pendingAutosave = new AtomicReference<BoardSnapshot>();
+    private List<BoardListener> listeners = new CopyOnWriteArrayList<BoardListener>();
+    private volatile SubmissionPublisher<List<BoardEvent>> publisher = null; // made when first asked for
+    private OpeningBook book = null;
+    private byte[] bookRecord = new byte[PositionCodec.RECORD_SIZE];
 
     BoardAdapter() {
     }
@@ -68,7 +112,26 @@ class BoardAdapter implements BoardController {
      * @author Lim Jun Jie
      */
     public void move(int posX, int posY) {
+        int sumTurn = board.getSumTurn();
         board.movePiece(posX, posY);
+
+        if (autosaveMoves > 0 && board.getSumTurn() != sumTurn && board.getSumTurn() % autosaveMoves == 0) {
+            autosave(board.snapshot());
+        }
+    }
+
+    /**
+     * move the piece at from to to in one call, for clients that
+     * do not select first. returns false if the move was refused
+     */
+    public boolean tryMove(int fromX, int fromY, int toX, int toY) {
+        if (!board.tryMove(fromX, fromY, toX, toY)) {
+            return false;
+        }
+        if (autosaveMoves > 0 && board.getSumTurn() % autosaveMoves == 0) {
+            autosave(board.snapshot());
+        }
+        return true;
     }
 
     /**
@@ -80,6 +143,13 @@ class BoardAdapter implements BoardController {
         return board.getBoard();
     }
 
+    /**
+     * get an immutable copy of the board and game info
+     */
+    public BoardSnapshot getSnapshot() {
+        return board.snapshot();
+    }
+
     /**
      * get legal moves of a selected piece
      * 
@@ -91,6 +161,44 @@ class BoardAdapter implements BoardController {
         return moves;
     }
 
+    /**
+     * get moves of every piece of the current player,
+     * { fromX, fromY, toX, toY }, without selecting a piece
+     */
+    public List<Integer[]> getLegalMoves() {
+        return board.getLegalMoves();
+    }
+
+    /**
+     * book used by getBookMove, null for none
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * most played move of the current position in the opening book,
+     * { fromX, fromY, toX, toY }, null if there is none
+     */
+    public Integer[] getBookMove() {
+        if (book == null || board.getWinner() != 0) {
+            return null;
+        }
+        Integer[] m = book.getBookMove(board, bookRecord);
+        if (m == null) {
+            return null;
+        }
+        Piece p = board.getPiece(m[0], m[1]);
+        return p != null && p.getPlayer() == board.getPlayer() ? m : null; // hash can collide
+    }
+
+    /**
+     * get squares changed by the last move, undo, redo or reset
+     */
+    public List<Integer[]> getChangedSquares() {
+        return board.getChangedSquares();
+    }
+
     /**
      * get winner of the game
      * 
@@ -131,6 +239,128 @@ class BoardAdapter implements BoardController {
         board.load();
     }
 
+    /**
+     * save the game on the save thread.
+     * the board is copied first so moves can continue during the save
+     */
+    public CompletableFuture<Void> saveGameAsync() {
+        BoardSnapshot snapshot = board.snapshot();
+        return CompletableFuture.runAsync(() -> {
+            try {
+                Board.writeSave(snapshot, "TalabiaSave.txt");
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, fileExecutor);
+    }
+
+    /**
+     * read the save file on the save thread, then replace the board
+     * using applyExecutor (e.g. SwingUtilities::invokeLater) so the board
+     * is only changed by the thread that owns it
+     */
+    public CompletableFuture<Void> loadGameAsync(Executor applyExecutor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return Board.readSave("TalabiaSave.txt");
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, fileExecutor).thenAcceptAsync(snapshot -> board.restore(snapshot), applyExecutor);
+    }
+
+    /**
+     * autosave the game every given number of moves, 0 turns autosave off
+     */
+    public void setAutosave(int moves) {
+        autosaveMoves = moves;
+    }
+
+    /**
+     * queue an autosave. if a write is still waiting, only the newest
+     * snapshot is written so a burst of moves costs one write
+     */
+    private void autosave(BoardSnapshot snapshot) {
+        if (pendingAutosave.getAndSet(snapshot) == null) {
+            fileExecutor.execute(() -> {
+                try {
+                    Board.writeSave(pendingAutosave.getAndSet(null), "TalabiaAutosave.txt");
+                } catch (IOException e) {
+                    System.out.println(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * take back the last move
+     * returns false if there is no move to take back
+     */
+    public boolean undo() {
+        return board.undoMove();
+    }
+
+    /**
+     * replay the last move taken back
+     * returns false if there is no move to replay
+     */
+    public boolean redo() {
+        return board.redoMove();
+    }
+
+    /**
+     * listener is called on the thread that changes the board,
+     * with all events of a move in one batch
+     */
+    public void addBoardListener(BoardListener listener) {
+        listeners.add(listener);
+        refreshBoardListener();
+    }
+
+    public void removeBoardListener(BoardListener listener) {
+        listeners.remove(listener);
+        refreshBoardListener();
+    }
+
+    /**
+     * batches of events for subscribers on other threads.
+     * a subscriber that falls a full buffer behind loses batches instead of
+     * slowing the game, and can read getSnapshot when sumTurn skips.
+     * events are made from the first subscribe until a move finds that
+     * the last subscriber has cancelled
+     */
+    public synchronized Flow.Publisher<List<BoardEvent>> getEventPublisher() {
+        if (publisher == null) {
+            publisher = new SubmissionPublisher<List<BoardEvent>>();
+        }
+        SubmissionPublisher<List<BoardEvent>> p = publisher;
+        return subscriber -> {
+            p.subscribe(subscriber);
+            refreshBoardListener();
+        };
+    }
+
+    /**
+     * let Board make events only while there is a listener or subscriber
+     */
+    private synchronized void refreshBoardListener() {
+        SubmissionPublisher<List<BoardEvent>> p = publisher;
+        boolean listening = !listeners.isEmpty() || (p != null && p.hasSubscribers());
+        board.setBoardListener(listening ? this::dispatch : null);
+    }
+
+    private void dispatch(List<BoardEvent> events) {
+        for (BoardListener l : listeners) {
+            l.boardChanged(events);
+        }
+        SubmissionPublisher<List<BoardEvent>> p = publisher;
+        if (p != null && p.hasSubscribers()) {
+            p.offer(events, (subscriber, batch) -> false);
+        } else if (listeners.isEmpty()) { // the last one has gone
+            refreshBoardListener();
+        }
+    }
+
     /**
      * get the current player
      * 
@@ -0,0 +1,251 @@
+/**
+ * Part in MVC design pattern: Model
+ * Model's design pattern: Observer
+ * Part in Observer design pattern: Event
+ *
+ * Purpose: one change made to the board, sent to a BoardListener.
+ * all events of a move are sent together in one batch, in this order:
+ * MoveApplied, PieceCaptured, TimePlusSwitched, CheckChanged, then
+ * BoardFlipped or GameOver. squares are as seen before the board flips
+ */
+public interface BoardEvent {
+    /**
+     * total turn after the change
+     */
+    public int getSumTurn();
+}
+
+/**
+ * Purpose: a piece was moved, by a move or a redo
+ */
+final class MoveApplied implements BoardEvent {
+    private final int sumTurn;
+    private final int player;
+    private final String pieceName;
+    private final int fromX;
+    private final int fromY;
+    private final int toX;
+    private final int toY;
+    private final String direction;
+
+    MoveApplied(int sumTurn, int player, String pieceName, int fromX, int fromY, int toX, int toY,
+            String direction) {
+        this.sumTurn = sumTurn;
+        this.player = player;
+        this.pieceName = pieceName;
+        this.fromX = fromX;
+        this.fromY = fromY;
+        this.toX = toX;
+        this.toY = toY;
+        this.direction = direction;
+    }
+
+    public int getSumTurn() {
+        return sumTurn;
+    }
+
+    public int getPlayer() {
+        return player;
+    }
+
+    public String getPieceName() {
+        return pieceName;
+    }
+
+    public int getFromX() {
+        return fromX;
+    }
+
+    public int getFromY() {
+        return fromY;
+    }
+
+    public int getToX() {
+        return toX;
+    }
+
+    public int getToY() {
+        return toY;
+    }
+
+    /**
+     * direction of the piece after the move
+     */
+    public String getDirection() {
+        return direction;
+    }
+
+    @Override
+    public String toString() {
+        return "MoveApplied " + sumTurn + " " + player + " " + pieceName + " " + fromX + fromY + toX + toY;
+    }
+}
+
+/**
+ * Purpose: the piece on the target square of a move was removed
+ */
+final class PieceCaptured implements BoardEvent {
+    private final int sumTurn;
+    private final int player;
+    private final String pieceName;
+    private final int posX;
+    private final int posY;
+
+    PieceCaptured(int sumTurn, int player, String pieceName, int posX, int posY) {
+        this.sumTurn = sumTurn;
+        this.player = player;
+        this.pieceName = pieceName;
+        this.posX = posX;
+        this.posY = posY;
+    }
+
+    public int getSumTurn() {
+        return sumTurn;
+    }
+
+    /**
+     * player of the captured piece
+     */
+    public int getPlayer() {
+        return player;
+    }
+
+    public String getPieceName() {
+        return pieceName;
+    }
+
+    public int getPosX() {
+        return posX;
+    }
+
+    public int getPosY() {
+        return posY;
+    }
+
+    @Override
+    public String toString() {
+        return "PieceCaptured " + sumTurn + " " + player + " " + pieceName + " " + posX + posY;
+    }
+}
+
+/**
+ * Purpose: every Time piece became a Plus and every Plus a Time
+ */
+final class TimePlusSwitched implements BoardEvent {
+    private final int sumTurn;
+
+    TimePlusSwitched(int sumTurn) {
+        this.sumTurn = sumTurn;
+    }
+
+    public int getSumTurn() {
+        return sumTurn;
+    }
+
+    @Override
+    public String toString() {
+        return "TimePlusSwitched " + sumTurn;
+    }
+}
+
+/**
+ * Purpose: the player in check changed, 0 if no player is in check
+ */
+final class CheckChanged implements BoardEvent {
+    private final int sumTurn;
+    private final int playerInCheck;
+
+    CheckChanged(int sumTurn, int playerInCheck) {
+        this.sumTurn = sumTurn;
+        this.playerInCheck = playerInCheck;
+    }
+
+    public int getSumTurn() {
+        return sumTurn;
+    }
+
+    public int getPlayerInCheck() {
+        return playerInCheck;
+    }
+
+    @Override
+    public String toString() {
+        return "CheckChanged " + sumTurn + " " + playerInCheck;
+    }
+}
+
+/**
+ * Purpose: the board was flipped (x = 6 - x, y = 5 - y) for the next player
+ */
+final class BoardFlipped implements BoardEvent {
+    private final int sumTurn;
+    private final int player;
+
+    BoardFlipped(int sumTurn, int player) {
+        this.sumTurn = sumTurn;
+        this.player = player;
+    }
+
+    public int getSumTurn() {
+        return sumTurn;
+    }
+
+    /**
+     * player to move next
+     */
+    public int getPlayer() {
+        return player;
+    }
+
+    @Override
+    public String toString() {
+        return "BoardFlipped " + sumTurn + " " + player;
+    }
+}
+
+/**
+ * Purpose: the game ended, winner is 1 or 2, or -1 for stalemate (draw)
+ */
+final class GameOver implements BoardEvent {
+    private final int sumTurn;
+    private final int winner;
+
+    GameOver(int sumTurn, int winner) {
+        this.sumTurn = sumTurn;
+        this.winner = winner;
+    }
+
+    public int getSumTurn() {
+        return sumTurn;
+    }
+
+    public int getWinner() {
+        return winner;
+    }
+
+    @Override
+    public String toString() {
+        return "GameOver " + sumTurn + " " + winner;
+    }
+}
+
+/**
+ * Purpose: the whole position was replaced by a reset, load, restore or
+ * undo. listeners read the board again instead of applying a delta
+ */
+final class BoardReplaced implements BoardEvent {
+    private final int sumTurn;
+
+    BoardReplaced(int sumTurn) {
+        this.sumTurn = sumTurn;
+    }
+
+    public int getSumTurn() {
+        return sumTurn;
+    }
+
+    @Override
+    public String toString() {
+        return "BoardReplaced " + sumTurn;
+    }
+}
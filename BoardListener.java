@@ -0,0 +1,14 @@
+import java.util.List;
+
+/**
+ * Part in MVC design pattern: View
+ * View's design pattern: Observer
+ * Part in Observer design pattern: Observer
+ *
+ * Purpose: be told about changes to the board instead of reading the
+ * whole board after each move. called on the thread that changed the
+ * board with all events of one change, the list must not be modified
+ */
+public interface BoardListener {
+    public void boardChanged(List<BoardEvent> events);
+}
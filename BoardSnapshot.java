@@ -0,0 +1,106 @@
+import java.util.*;
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: immutable copy of the pieces and game info of a Board.
+ * allow the game to be saved by another thread or handed to the view
+ * while the Board keeps changing
+ */
+public final class BoardSnapshot {
+    private final String[] names;
+    private final int[] players;
+    private final int[] posX;
+    private final int[] posY;
+    private final String[] directions;
+    private final int player;
+    private final int winner;
+    private final int turn;
+    private final int playerInCheck;
+    private final int sumTurn;
+
+    BoardSnapshot(List<Piece> pieces, int player, int winner, int turn, int playerInCheck, int sumTurn) {
+        int size = pieces.size();
+        names = new String[size];
+        players = new int[size];
+        posX = new int[size];
+        posY = new int[size];
+        directions = new String[size];
+
+        int i = 0;
+        for (Piece p : pieces) {
+            names[i] = p.getName();
+            players[i] = p.getPlayer();
+            posX[i] = p.getX();
+            posY[i] = p.getY();
+            directions[i] = p.getDirection();
+            i++;
+        }
+
+        this.player = player;
+        this.winner = winner;
+        this.turn = turn;
+        this.playerInCheck = playerInCheck;
+        this.sumTurn = sumTurn;
+    }
+
+    /**
+     * arrays are owned by the snapshot after this call
+     */
+    BoardSnapshot(String[] names, int[] players, int[] posX, int[] posY, String[] directions,
+            int player, int winner, int turn, int playerInCheck, int sumTurn) {
+        this.names = names;
+        this.players = players;
+        this.posX = posX;
+        this.posY = posY;
+        this.directions = directions;
+        this.player = player;
+        this.winner = winner;
+        this.turn = turn;
+        this.playerInCheck = playerInCheck;
+        this.sumTurn = sumTurn;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getPieceName(int index) {
+        return names[index];
+    }
+
+    public int getPiecePlayer(int index) {
+        return players[index];
+    }
+
+    public int getPiecePosX(int index) {
+        return posX[index];
+    }
+
+    public int getPiecePosY(int index) {
+        return posY[index];
+    }
+
+    public String getPieceDirection(int index) {
+        return directions[index];
+    }
+
+    public int getPlayer() {
+        return player;
+    }
+
+    public int getWinner() {
+        return winner;
+    }
+
+    public int getTurn() {
+        return turn;
+    }
+
+    public int getPlayerInCheck() {
+        return playerInCheck;
+    }
+
+    public int getSumTurn() {
+        return sumTurn;
+    }
+}
@@ -2,6 +2,11 @@ import javax.swing.*;
 import javax.swing.border.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -17,13 +22,24 @@ import java.util.List;
  * design pattern
  */
 public class BoardView {
-    private BoardController controller = new BoardAdapter();
+    private static final int AUTOSAVE_MOVES = 10;
+    private static final String LATENCY_FILE = "TalabiaLatency.csv";
+    private static final String BOOK_FILE = "TalabiaBook.bin"; // written by OpeningBook
+    private GameThread game; // owns the BoardController
+    private GameFrame shownFrame = null;
     private List<TilePrototype> tiles = new LinkedList<TilePrototype>();
-    private int moveState = 0;
+    private TilePrototype[] tileAt = new TilePrototype[42]; // index = y * 7 + x
+    private List<TilePrototype> colouredTiles = new LinkedList<TilePrototype>();
+    private BoardCanvas canvas = null; // null when the board is drawn with buttons
+    private IconCache icons = new IconCache();
     private JLabel turn = new JLabel("Turn: 0");
     private JLabel winner = new JLabel("Winner: 0");
     private JLabel playerInCheck = new JLabel("Player in Check: 0");
     private JLabel player = new JLabel("Current Player: 1");
+    private LatencyMonitor latency = null; // null when latency is not shown
+    private JTextArea latencyText = null;
+    private boolean framePainted = true; // false until the last frame shown is painted
+    private long unpaintedClickTime = 0;
 
     /**
      * create a view with buttons and menu for player
@@ -31,6 +47,24 @@ public class BoardView {
      * @author Lim Jun Jie
      */
     public BoardView() {
+        this(false);
+    }
+
+    /**
+     * create a view with menu for player.
+     * if useCanvas, the board is drawn by one BoardCanvas instead of buttons
+     */
+    public BoardView(boolean useCanvas) {
+        this(useCanvas, false);
+    }
+
+    /**
+     * create a view with menu for player.
+     * if useCanvas, the board is drawn by one BoardCanvas instead of buttons.
+     * if showLatency, the time from a click to the board being painted is
+     * measured and shown in the menu, and the startup times are printed
+     */
+    public BoardView(boolean useCanvas, boolean showLatency) {
         // initialize window and screen
         Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
         Border line = BorderFactory.createLineBorder(Color.black);
@@ -116,71 +150,263 @@ public class BoardView {
         load.setAlignmentX(Component.LEFT_ALIGNMENT);
         menuScreen.add(load);
 
+        JButton undo = new JButton("Undo Move");
+        undo.setFont(new Font("Callibri", Font.BOLD, 24));
+        undo.setBorder(new CompoundBorder(line, padding));
+        undo.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undoMove();
+            }
+        });
+        undo.setAlignmentX(Component.LEFT_ALIGNMENT);
+        menuScreen.add(undo);
+
+        JButton redo = new JButton("Redo Move");
+        redo.setFont(new Font("Callibri", Font.BOLD, 24));
+        redo.setBorder(new CompoundBorder(line, padding));
+        redo.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redoMove();
+            }
+        });
+        redo.setAlignmentX(Component.LEFT_ALIGNMENT);
+        menuScreen.add(redo);
+
+        OpeningBook book = openBook();
+        if (book != null) {
+            JButton hint = new JButton("Book Move");
+            hint.setFont(new Font("Callibri", Font.BOLD, 24));
+            hint.setBorder(new CompoundBorder(line, padding));
+            hint.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    showBookMove();
+                }
+            });
+            hint.setAlignmentX(Component.LEFT_ALIGNMENT);
+            menuScreen.add(hint);
+        }
+
+        if (showLatency) {
+            latency = new LatencyMonitor();
+            addLatencyPanel(menuScreen, line, padding);
+        }
+
         // create board (grid of buttons)
         ActionListener tileListener = new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                // get JButton that has tile obj in its client property
-                JButton b = (JButton) e.getSource();
-
                 // get tile object, need its posX and posY
-                TilePrototype t = (TilePrototype) b.getClientProperty("tile");
-                
-                if (controller.getWinner() == 0) {
-                    t.setColor(Color.GREEN);
-                    update(t.getX(), t.getY());
+                TilePrototype t;
+                if (e.getSource() instanceof JButton) { // JButton has tile obj in its client property
+                    t = (TilePrototype) ((JButton) e.getSource()).getClientProperty("tile");
+                } else { // canvas sends the tile itself
+                    t = (TilePrototype) e.getSource();
                 }
+
+                update(t.getX(), t.getY());
             }
         };
 
-        TilePrototype tileCreator = new Tile(tileListener);
+        TilePrototype tileCreator;
+        if (useCanvas) {
+            canvas = new BoardCanvas(tileListener);
+            tileCreator = canvas.getTileCreator();
+        } else {
+            tileCreator = new Tile(tileListener);
+        }
 
         for (int y = 5; y > -1; y--) {
             for (int x = 0; x < 7; x++) {
                 TilePrototype t = tileCreator.clone(x, y);
                 tiles.add(t);
+                tileAt[y * 7 + x] = t;
             }
         }
 
-        for (TilePrototype t : tiles) {
-            boardScreen.add(t.getButton());
+        if (canvas != null) {
+            boardScreen.setLayout(new BorderLayout());
+            boardScreen.add(canvas, BorderLayout.CENTER);
+        } else {
+            for (TilePrototype t : tiles) {
+                boardScreen.add(t.getButton());
+            }
         }
 
-        List<Piece> pieces = controller.getBoard();
-        setTilesImage(pieces);
+        // scale piece images to the tiles when the window is resized
+        boardScreen.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                resizeIcons();
+            }
+        });
+
+        // board is drawn when the model thread publishes its first frame
+        BoardController controller = new BoardAdapter();
+        controller.setOpeningBook(book);
+        game = new GameThread(controller, frame -> render(frame), latency);
+        game.setAutosave(AUTOSAVE_MOVES);
 
         // set window visible after all components are added
         master.setVisible(true);
+
+        // placeholders are drawn until the piece images are read from the atlas
+        CompletableFuture.supplyAsync(SpriteAtlas::load).whenCompleteAsync((images, e) -> {
+            if (e != null) {
+                System.out.println(e);
+                return;
+            }
+            icons.setImages(images);
+            if (shownFrame != null) {
+                showFrame(shownFrame, Board.ALL_SQUARES);
+            }
+            if (latency != null) {
+                System.out.println("Images loaded after " + getUptime() + " ms");
+            }
+        }, SwingUtilities::invokeLater);
+    }
+
+    /**
+     * add the latency table and its export button to the menu, and time
+     * every paint of Swing so the paint of a frame can be recorded
+     */
+    private void addLatencyPanel(JPanel menuScreen, Border line, Border padding) {
+        latencyText = new JTextArea(latency.getReport());
+        latencyText.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        latencyText.setEditable(false);
+        latencyText.setAlignmentX(Component.LEFT_ALIGNMENT);
+        latencyText.setBorder(padding);
+        menuScreen.add(latencyText);
+
+        JButton export = new JButton("Export Latency");
+        export.setFont(new Font("Callibri", Font.BOLD, 24));
+        export.setBorder(new CompoundBorder(line, padding));
+        export.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                exportLatency();
+            }
+        });
+        export.setAlignmentX(Component.LEFT_ALIGNMENT);
+        menuScreen.add(export);
+
+        RepaintManager.setCurrentManager(new RepaintManager() {
+            @Override
+            public void paintDirtyRegions() {
+                long start = System.nanoTime();
+                super.paintDirtyRegions();
+                if (!framePainted) {
+                    framePainted = true;
+                    recordPaint(start);
+                }
+            }
+        });
+    }
+
+    /**
+     * record the paint of the last frame shown and the time since its click.
+     * with a canvas, click to paint includes the move animation
+     */
+    private void recordPaint(long start) {
+        long end = System.nanoTime();
+        latency.record(LatencyMonitor.PAINT, end - start);
+        if (unpaintedClickTime != 0) {
+            latency.record(LatencyMonitor.CLICK_TO_PAINT, end - unpaintedClickTime);
+            unpaintedClickTime = 0;
+        }
+        latencyText.setText(latency.getReport());
+    }
+
+    /**
+     * write the latency percentiles to a file
+     */
+    public void exportLatency() {
+        try {
+            latency.export(LATENCY_FILE);
+            System.out.println("Latency written to " + LATENCY_FILE);
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+    }
+
+    /**
+     * milliseconds since the JVM started
+     */
+    private static long getUptime() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
     }
 
     /**
-     * update board display
+     * send a click on a tile to the model thread
      *
      * @author Lim Jun Jie
      */
     public void update(int posX, int posY) {
-        if (moveState == 0) { // select piece
-            List<Integer[]> moves = controller.getMove(posX, posY);
-            if (moves.size() > 0) {
-                highlightMoves(moves);
-            }
-            moveState = 1;
+        game.click(posX, posY);
+    }
+
+    /**
+     * draw the newest frame published by the model thread.
+     * a move just made is animated first when the board is a canvas
+     */
+    private void render(GameFrame frame) {
+        if (canvas != null && canvas.isAnimating()) {
+            return; // newest frame is drawn when the animation ends
+        }
 
-        } else { // move piece
-            controller.move(posX, posY);
-            List<Piece> pieces = controller.getBoard();
-            setTilesImage(pieces);
-            highlightCheck(pieces);
+        if (canvas != null && frame.isMoved() && shownFrame != null
+                && frame.getBoard().getSumTurn() == shownFrame.getBoard().getSumTurn() + 1) {
+            clearColours();
+            shownFrame = frame;
+            canvas.animateMove(frame.getFromX(), frame.getFromY(), frame.getToX(), frame.getToY(),
+                    () -> showFrame(game.getLatestFrame(), game.takeChangedSquares()));
+        } else {
+            showFrame(frame, game.takeChangedSquares());
+        }
+    }
 
-            if (controller.getWinner() != 0) {
-                setWinner();
+    /**
+     * draw tiles of changed squares (bits y * 7 + x), highlights and menu
+     */
+    private void showFrame(GameFrame frame, long changedSquares) {
+        if (shownFrame == null && latency != null) {
+            System.out.println("First frame after " + getUptime() + " ms");
+        }
+        shownFrame = frame;
+        BoardSnapshot board = frame.getBoard();
+        int[] pieceAt = getSquares(board);
+
+        long start = System.nanoTime();
+        clearColours();
+        for (long bits = changedSquares; bits != 0; bits &= bits - 1) {
+            int square = Long.numberOfTrailingZeros(bits);
+            setTileImage(tileAt[square], board, pieceAt[square]);
+        }
 
-            } else {
-                setPlayer();
+        if (frame.getClickX() > -1) { // piece selected
+            colourTile(tileAt[frame.getClickY() * 7 + frame.getClickX()], Color.GREEN);
+            highlightMoves(frame.getMoves());
+        }
+        long tilesEnd = System.nanoTime();
+        highlightCheck(board, pieceAt);
+
+        if (latency != null) {
+            latency.record(LatencyMonitor.TILES, tilesEnd - start);
+            latency.record(LatencyMonitor.HIGHLIGHT_CHECK, System.nanoTime() - tilesEnd);
+            framePainted = false;
+            if (frame.getClickTime() != 0) {
+                unpaintedClickTime = frame.getClickTime();
             }
+        }
 
-            turn.setText("Turn: " + controller.getTotalTurn());
-            moveState = 0;
+        turn.setText("Turn: " + board.getSumTurn());
+        winner.setText("Winner: " + board.getWinner());
+        if (board.getWinner() != 0) {
+            setWinner();
+        } else {
+            setPlayer();
         }
     }
 
@@ -189,17 +415,15 @@ public class BoardView {
      *
      * @author Lim Jun Jie
      */
-    private void highlightCheck(List<Piece> pieces) {
-        int checkPlayer = controller.getPlayerInCheck();
+    private void highlightCheck(BoardSnapshot board, int[] pieceAt) {
+        int checkPlayer = board.getPlayerInCheck();
         playerInCheck.setText("Player in Check: " + checkPlayer);
 
-        Piece sun = controller.getPiece("Sun", checkPlayer);
-        if (sun != null) {
-            for (TilePrototype t : tiles) {
-                if (controller.getPiecePosX(sun) == t.getX() && controller.getPiecePosY(sun) == t.getY()) {
-                    t.setColor(Color.RED);
-                    break;
-                }
+        for (int square = 0; square < pieceAt.length; square++) {
+            int i = pieceAt[square];
+            if (i > -1 && board.getPieceName(i).equals("Sun") && board.getPiecePlayer(i) == checkPlayer) {
+                colourTile(tileAt[square], Color.RED);
+                break;
             }
         }
     }
@@ -211,42 +435,62 @@ public class BoardView {
      */
     private void highlightMoves(List<Integer[]> moves) {
         for (Integer[] m : moves) {
-            for (TilePrototype t : tiles) {
-                if (m[0] == t.getX() && m[1] == t.getY()) {
-                    t.setColor(Color.GREEN);
-                    break;
-                }
-            }
+            colourTile(tileAt[m[1] * 7 + m[0]], Color.GREEN);
         }
     }
 
     /**
-     * set all tile's images according to the pieces position
-     *
-     * @author Lim Jun Jie
+     * get the index of the piece on each square, -1 if empty
+     * index of array = y * 7 + x
      */
-    private void setTilesImage(List<Piece> pieces) {
-        for (TilePrototype t : tiles) { // clear tile images
-            t.setImage(null);
+    private int[] getSquares(BoardSnapshot board) {
+        int[] pieceAt = new int[42];
+        Arrays.fill(pieceAt, -1);
+        for (int i = 0; i < board.size(); i++) {
+            pieceAt[board.getPiecePosY(i) * 7 + board.getPiecePosX(i)] = i;
         }
+        return pieceAt;
+    }
 
-        for (Piece p : pieces) { // put tile images
-            for (TilePrototype t : tiles) {
-                t.setColor(null); // un-colour button
+    private void setTileImage(TilePrototype t, BoardSnapshot board, int i) {
+        if (i < 0) {
+            t.setIcon(null);
+        } else {
+            t.setIcon(icons.getIcon(IconCache.getImagePath(board.getPiecePlayer(i), board.getPieceName(i),
+                    board.getPieceDirection(i))));
+        }
+    }
 
-                if (t.getX() == controller.getPiecePosX(p) && t.getY() == controller.getPiecePosY(p)) {
-                    int player = controller.getPiecePlayer(p);
-                    String name = controller.getPieceName(p);
+    /**
+     * colour a tile, remembered so only coloured tiles are un-coloured
+     */
+    private void colourTile(TilePrototype t, Color colour) {
+        t.setColor(colour);
+        colouredTiles.add(t);
+    }
 
-                    if (name.equals("Point")) {
-                        t.setImage("Images_p" + player + "\\" + "Point_" + controller.getPieceDirection(p) + ".png");
-                    } else {
-                        t.setImage("Images_p" + player + "\\" + name + ".png");
-                    }
-                    break;
+    private void clearColours() {
+        for (TilePrototype t : colouredTiles) {
+            t.setColor(null);
+        }
+        colouredTiles.clear();
+    }
 
-                }
-            }
+    /**
+     * scale piece images to the current tile size and redraw the tiles
+     */
+    private void resizeIcons() {
+        if (canvas != null) {
+            icons.setSize(canvas.getCellWidth() * 9 / 10, canvas.getCellHeight() * 9 / 10);
+        } else {
+            JButton button = tiles.get(0).getButton();
+            Insets insets = button.getInsets();
+            icons.setSize(button.getWidth() - insets.left - insets.right,
+                    button.getHeight() - insets.top - insets.bottom);
+        }
+
+        if (shownFrame != null && (canvas == null || !canvas.isAnimating())) {
+            showFrame(shownFrame, Board.ALL_SQUARES);
         }
     }
 
@@ -257,13 +501,7 @@ public class BoardView {
      * @author Lim Jun Jie
      */
     public void resetGame() {
-        controller.resetGame();
-        List<Piece> pieces = controller.getBoard();
-        setTilesImage(pieces);
-        playerInCheck.setText("Player in Check: 0");
-        player.setText("Current Player: 1");
-        winner.setText("Winner: 0");
-        turn.setText("Turn: 0");
+        game.resetGame();
     }
 
     /**
@@ -272,7 +510,7 @@ public class BoardView {
      * @author Ling Chee Xiang
      */
     public void saveGame() {
-        controller.saveGame();
+        game.saveGame();
     }
 
     /**
@@ -282,15 +520,43 @@ public class BoardView {
      * @author Lim Jun Jie
      */
     public void loadGame() {
-        controller.loadGame();
-        List<Piece> pieces = controller.getBoard();
-        setTilesImage(pieces);
-        highlightCheck(pieces);
-
-        playerInCheck.setText("Player in Check: " + controller.getPlayerInCheck());
-        player.setText("Current Player: " + controller.getPlayer());
-        winner.setText("Winner: " + controller.getWinner());
-        turn.setText("Turn: " + controller.getTotalTurn());
+        game.loadGame();
+    }
+
+    /**
+     * takes back the last move
+     */
+    public void undoMove() {
+        game.undo();
+    }
+
+    /**
+     * replays the last move taken back
+     */
+    public void redoMove() {
+        game.redo();
+    }
+
+    /**
+     * selects the piece of the book move and shows its square
+     */
+    public void showBookMove() {
+        game.showBookMove();
+    }
+
+    /**
+     * the opening book in BOOK_FILE, null if there is none
+     */
+    private static OpeningBook openBook() {
+        if (!new File(BOOK_FILE).exists()) {
+            return null;
+        }
+        try {
+            return OpeningBook.open(BOOK_FILE);
+        } catch (IOException e) {
+            System.out.println(e);
+            return null;
+        }
     }
 
     /**
@@ -299,7 +565,7 @@ public class BoardView {
      * @author Lim Jun Jie
      */
     public void setPlayer() {
-        player.setText("Current Player: " + controller.getPlayer());
+        player.setText("Current Player: " + shownFrame.getBoard().getPlayer());
     }
 
     /**
@@ -308,7 +574,7 @@ public class BoardView {
      * @author Lim Jun Jie
      */
     public void setWinner() {
-        int gameWinner = controller.getWinner();
+        int gameWinner = shownFrame.getBoard().getWinner();
         if (gameWinner == 0) { // game ongoing
             player.setText("Winner: 0");
         } else if (gameWinner == -1) { // stalemate (draw)
@@ -0,0 +1,139 @@
+import jdk.jfr.*;
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: base of the Java Flight Recorder events of Board, so a recording
+ * of a slow game or server shows moves, move generation, Time/Plus
+ * switches, win checks and save/load next to GC and CPU samples.
+ * events are only filled in and committed when a recording has them on,
+ * e.g. java -XX:StartFlightRecording:settings=talabia.jfc
+ */
+@Category("Talabia")
+@StackTrace(false)
+public abstract class FlightEvent extends Event {
+}
+
+/**
+ * Purpose: a move made by Board.movePiece
+ */
+@Name("talabia.Move")
+@Label("Move")
+class FlightMove extends FlightEvent {
+    @Label("Piece")
+    String piece;
+
+    @Label("Player")
+    int player;
+
+    @Label("From")
+    String from;
+
+    @Label("To")
+    String to;
+
+    @Label("Captured")
+    String captured;
+
+    @Label("Player In Check")
+    int playerInCheck;
+
+    @Label("Sum Turn")
+    int sumTurn;
+
+    void record(String piece, int player, int fromX, int fromY, int toX, int toY, Piece captured,
+            int playerInCheck, int sumTurn) {
+        if (shouldCommit()) {
+            this.piece = piece;
+            this.player = player;
+            this.from = fromX + "," + fromY;
+            this.to = toX + "," + toY;
+            this.captured = captured == null ? null : captured.getName();
+            this.playerInCheck = playerInCheck;
+            this.sumTurn = sumTurn;
+            commit();
+        }
+    }
+}
+
+/**
+ * Purpose: legal move generation of one piece
+ */
+@Name("talabia.LegalMoves")
+@Label("Legal Moves")
+class FlightLegalMoves extends FlightEvent {
+    @Label("Piece")
+    String piece;
+
+    @Label("Moves")
+    int moves;
+
+    void record(Piece piece, int moves) {
+        if (shouldCommit()) {
+            this.piece = piece.getName();
+            this.moves = moves;
+            commit();
+        }
+    }
+}
+
+/**
+ * Purpose: Time pieces turned to Plus and Plus to Time by a move.
+ * not for the switch a check test tries, or the one undo and redo replay
+ */
+@Name("talabia.TimePlusSwitch")
+@Label("Time/Plus Switch")
+class FlightTimePlusSwitch extends FlightEvent {
+    @Label("Sum Turn")
+    int sumTurn;
+
+    void record(int sumTurn) {
+        if (shouldCommit()) {
+            this.sumTurn = sumTurn;
+            commit();
+        }
+    }
+}
+
+/**
+ * Purpose: checkWin after a move and its outcome
+ */
+@Name("talabia.CheckWin")
+@Label("Check Win")
+class FlightCheckWin extends FlightEvent {
+    @Label("Winner")
+    @Description("0 game not end, 1 or 2 player wins, -1 stalemate")
+    int winner;
+
+    @Label("Sum Turn")
+    int sumTurn;
+
+    void record(int winner, int sumTurn) {
+        if (shouldCommit()) {
+            this.winner = winner;
+            this.sumTurn = sumTurn;
+            commit();
+        }
+    }
+}
+
+/**
+ * Purpose: a save file written or read
+ */
+@Name("talabia.SaveFile")
+@Label("Save File")
+class FlightSaveFile extends FlightEvent {
+    @Label("File")
+    String fileName;
+
+    @Label("Load")
+    @Description("true if the file was read, false if written")
+    boolean load;
+
+    void record(String fileName, boolean load) {
+        if (shouldCommit()) {
+            this.fileName = fileName;
+            this.load = load;
+            commit();
+        }
+    }
+}
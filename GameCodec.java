@@ -0,0 +1,517 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: write a game as the index of each move in the list of
+ * Board.getLegalMoves() of its position, using just enough bits for the
+ * length of that list (about 5 bits per move instead of a piece list
+ * per position). decoding replays the game through Board, so a game
+ * round trips exactly.
+ *
+ * an index only means something for the list of its position, so
+ * decoding makes the list at every ply and then the move: smaller than
+ * any other form, but about twice as slow as replaying from/to pairs.
+ * for games that are read more than stored, a move table keeps each move
+ * as its from/to pair in 12 bits and is read without Board
+ *
+ * game format: varint move count, then the move indexes packed low bit
+ * first, padded to a whole byte
+ * move table format: varint move count, then per move fromX, fromY, toX,
+ * toY in 3 bits each, padded to a whole byte
+ *
+ * usage:
+ * java GameCodec pack <gamesFile> <archive> [deflate] [table]
+ * java GameCodec unpack <archive> <gamesFile>
+ * games file format is the same as TrainingExporter's
+ */
+public class GameCodec {
+    private GameCodec() {
+    }
+
+    /**
+     * encode the moves of a game played from the start position.
+     * board is only used as scratch space
+     */
+    public static byte[] encode(List<Integer[]> moves, Board board) {
+        BitWriter bits = new BitWriter();
+        bits.writeVarint(moves.size());
+        board.setBoard();
+
+        for (Integer[] move : moves) {
+            List<Integer[]> legalMoves = board.getLegalMoves();
+            int index = indexOf(legalMoves, move);
+            if (index < 0 || !board.tryMove(move[0], move[1], move[2], move[3])) {
+                throw new IllegalArgumentException("illegal move " + Arrays.toString(move)
+                        + " at total turn " + board.getSumTurn());
+            }
+            bits.write(index, bitsFor(legalMoves.size()));
+        }
+        return bits.toByteArray();
+    }
+
+    /**
+     * decode a game from data at offset. board ends in the final position.
+     * throws IOException if the data is not a legal game
+     */
+    public static List<Integer[]> decode(byte[] data, int offset, Board board) throws IOException {
+        BitReader bits = new BitReader(data, offset);
+        board.setBoard();
+        try {
+            int count = bits.readVarint();
+            List<Integer[]> moves = new ArrayList<Integer[]>(count);
+            for (int i = 0; i < count; i++) {
+                List<Integer[]> legalMoves = board.getLegalMoves();
+                int index = bits.read(bitsFor(legalMoves.size()));
+                if (index >= legalMoves.size()) {
+                    throw new IOException("corrupt game at move " + i + ": no move " + index);
+                }
+                Integer[] move = legalMoves.get(index);
+                if (!board.tryMove(move[0], move[1], move[2], move[3])) {
+                    throw new IOException("corrupt game at move " + i + ": " + Arrays.toString(move)
+                            + " is refused");
+                }
+                moves.add(move);
+            }
+            return moves;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("truncated game", e);
+        }
+    }
+
+    /**
+     * encode the moves of a game as a move table
+     */
+    public static byte[] encodeTable(List<Integer[]> moves) {
+        BitWriter bits = new BitWriter();
+        bits.writeVarint(moves.size());
+        for (Integer[] m : moves) {
+            bits.write(m[0] << 9 | m[1] << 6 | m[2] << 3 | m[3], 12);
+        }
+        return bits.toByteArray();
+    }
+
+    /**
+     * decode a move table from data at offset. the moves are not checked
+     */
+    public static List<Integer[]> decodeTable(byte[] data, int offset) throws IOException {
+        BitReader bits = new BitReader(data, offset);
+        try {
+            int count = bits.readVarint();
+            List<Integer[]> moves = new ArrayList<Integer[]>(count);
+            for (int i = 0; i < count; i++) {
+                int move = bits.read(12);
+                Integer[] m = { move >> 9 & 7, move >> 6 & 7, move >> 3 & 7, move & 7 };
+                moves.add(m);
+            }
+            return moves;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("truncated move table", e);
+        }
+    }
+
+    /**
+     * number of bits needed for an index into a list of size n
+     */
+    static int bitsFor(int n) {
+        return n <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(n - 1);
+    }
+
+    private static int indexOf(List<Integer[]> moves, Integer[] move) {
+        int i = 0;
+        for (Integer[] m : moves) {
+            if (m[0].intValue() == move[0] && m[1].intValue() == move[1]
+                    && m[2].intValue() == move[2] && m[3].intValue() == move[3]) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * read a game in games file format, e.g. "3133 4142"
+     */
+    public static List<Integer[]> parseGame(String line) {
+        List<Integer[]> moves = new ArrayList<Integer[]>();
+        for (String move : line.trim().split("\\s+")) {
+            if (move.length() == 4) {
+                Integer[] m = { move.charAt(0) - '0', move.charAt(1) - '0', move.charAt(2) - '0',
+                        move.charAt(3) - '0' };
+                moves.add(m);
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * write a game in games file format
+     */
+    public static String formatGame(List<Integer[]> moves) {
+        StringBuilder line = new StringBuilder();
+        for (Integer[] m : moves) {
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append(m[0]).append(m[1]).append(m[2]).append(m[3]);
+        }
+        return line.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("usage: java GameCodec pack <gamesFile> <archive> [deflate] [table]");
+            System.out.println("       java GameCodec unpack <archive> <gamesFile>");
+            return;
+        }
+
+        Board board = new Board();
+        if (args[0].equals("pack")) {
+            List<String> options = Arrays.asList(args).subList(3, args.length);
+            long textBytes = 0;
+            try (BufferedReader in = Files.newBufferedReader(Paths.get(args[1]));
+                    GameArchiveWriter out = new GameArchiveWriter(Paths.get(args[2]), options.contains("deflate"),
+                            options.contains("table"))) {
+                boolean table = options.contains("table");
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        List<Integer[]> moves = parseGame(line);
+                        out.addGame(table ? encodeTable(moves) : encode(moves, board));
+                        textBytes += line.length() + 1;
+                    }
+                }
+            }
+            System.out.println(textBytes + " bytes of games -> " + Files.size(Paths.get(args[2])) + " bytes");
+        } else {
+            try (GameArchiveReader in = new GameArchiveReader(Paths.get(args[1]));
+                    BufferedWriter out = Files.newBufferedWriter(Paths.get(args[2]))) {
+                for (int i = 0; i < in.getGameCount(); i++) {
+                    out.write(formatGame(in.readGame(i, board)));
+                    out.newLine();
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: write encoded games to an archive file in blocks of
+ * BLOCK_GAMES games, each optionally deflated, followed by an index of
+ * block offsets so a reader can jump to any game.
+ * the games of an archive are either all GameCodec.encode indexes or all
+ * GameCodec.encodeTable move tables; tables are about 4 times bigger but
+ * are read without replaying the game
+ *
+ * file format:
+ * "TLBA" ("TLBM" for move tables), then blocks of: int stored length,
+ * int raw length, then per game: varint length, encoded game.
+ * index: long offset of each block, int game count, int block count, magic
+ */
+class GameArchiveWriter implements Closeable {
+    static final int MAGIC = 0x544C4241; // "TLBA"
+    static final int TABLE_MAGIC = 0x544C424D; // "TLBM"
+    static final int BLOCK_GAMES = 256;
+
+    private final FileChannel channel;
+    private final boolean deflate;
+    private final int magic;
+    private final BitWriter block = new BitWriter();
+    private final List<Long> blockOffsets = new ArrayList<Long>();
+    private int blockGames = 0;
+    private int gameCount = 0;
+
+    GameArchiveWriter(Path path, boolean deflate, boolean moveTable) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.deflate = deflate;
+        this.magic = moveTable ? TABLE_MAGIC : MAGIC;
+        ByteBuffer header = ByteBuffer.allocate(4).putInt(magic);
+        header.flip();
+        channel.write(header);
+    }
+
+    /**
+     * add a game encoded by GameCodec.encode, or by GameCodec.encodeTable
+     * for an archive of move tables
+     */
+    void addGame(byte[] game) throws IOException {
+        block.writeVarint(game.length);
+        block.writeBytes(game);
+        blockGames++;
+        gameCount++;
+        if (blockGames == BLOCK_GAMES) {
+            writeBlock();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockGames == 0) {
+            return;
+        }
+        byte[] raw = block.toByteArray();
+        byte[] stored = raw;
+        if (deflate) {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            deflater.end();
+            stored = out.toByteArray();
+        }
+
+        blockOffsets.add(channel.position());
+        ByteBuffer buffer = ByteBuffer.allocate(8 + stored.length);
+        buffer.putInt(stored.length).putInt(deflate ? raw.length : -1).put(stored);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        block.clear();
+        blockGames = 0;
+    }
+
+    public void close() throws IOException {
+        writeBlock();
+        ByteBuffer index = ByteBuffer.allocate(blockOffsets.size() * 8 + 12);
+        for (long offset : blockOffsets) {
+            index.putLong(offset);
+        }
+        index.putInt(gameCount).putInt(blockOffsets.size()).putInt(magic);
+        index.flip();
+        while (index.hasRemaining()) {
+            channel.write(index);
+        }
+        channel.close();
+    }
+}
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: read games from an archive written by GameArchiveWriter.
+ * the last block read is kept, so reading games in order inflates
+ * each block once
+ */
+class GameArchiveReader implements Closeable {
+    private final FileChannel channel;
+    private final long[] blockOffsets;
+    private final int gameCount;
+    private final boolean moveTable;
+    private int cachedBlock = -1;
+    private byte[] cachedData;
+    private int[] cachedGameOffsets;
+
+    GameArchiveReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer footer = read(channel.size() - 12, 12);
+        gameCount = footer.getInt();
+        int blockCount = footer.getInt();
+        int magic = footer.getInt();
+        if (magic != GameArchiveWriter.MAGIC && magic != GameArchiveWriter.TABLE_MAGIC) {
+            throw new IOException("not a game archive: " + path);
+        }
+        moveTable = magic == GameArchiveWriter.TABLE_MAGIC;
+
+        ByteBuffer index = read(channel.size() - 12 - blockCount * 8L, blockCount * 8);
+        blockOffsets = new long[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            blockOffsets[i] = index.getLong();
+        }
+    }
+
+    int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * decode game number index, board is used as scratch space
+     * (not for move tables)
+     */
+    List<Integer[]> readGame(int index, Board board) throws IOException {
+        loadBlock(index / GameArchiveWriter.BLOCK_GAMES);
+        int offset = cachedGameOffsets[index % GameArchiveWriter.BLOCK_GAMES];
+        return moveTable ? GameCodec.decodeTable(cachedData, offset) : GameCodec.decode(cachedData, offset, board);
+    }
+
+    private void loadBlock(int blockIndex) throws IOException {
+        if (blockIndex == cachedBlock) {
+            return;
+        }
+        ByteBuffer header = read(blockOffsets[blockIndex], 8);
+        int storedLength = header.getInt();
+        int rawLength = header.getInt();
+        byte[] data = new byte[storedLength];
+        read(blockOffsets[blockIndex] + 8, storedLength).get(data);
+
+        if (rawLength >= 0) { // deflated block
+            Inflater inflater = new Inflater();
+            inflater.setInput(data);
+            byte[] raw = new byte[rawLength];
+            try {
+                inflater.inflate(raw);
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            } finally {
+                inflater.end();
+            }
+            data = raw;
+        }
+
+        // find where each game starts
+        List<Integer> offsets = new ArrayList<Integer>();
+        BitReader bits = new BitReader(data, 0);
+        while (bits.getBytePosition() < data.length) {
+            int length = bits.readVarint();
+            offsets.add(bits.getBytePosition());
+            bits.skipBytes(length);
+        }
+        cachedGameOffsets = new int[offsets.size()];
+        for (int i = 0; i < cachedGameOffsets.length; i++) {
+            cachedGameOffsets[i] = offsets.get(i);
+        }
+
+        cachedData = data;
+        cachedBlock = blockIndex;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: append values of any bit width to a growing byte array, low bit first
+ */
+class BitWriter {
+    private byte[] data = new byte[64];
+    private int length = 0; // whole bytes written
+    private long pending = 0;
+    private int pendingBits = 0;
+
+    void write(int value, int bitCount) {
+        pending |= (long) value << pendingBits;
+        pendingBits += bitCount;
+        while (pendingBits >= 8) {
+            writeByte((int) pending);
+            pending >>>= 8;
+            pendingBits -= 8;
+        }
+    }
+
+    /**
+     * 7 bits per byte, high bit set when more bytes follow. starts on a byte
+     */
+    void writeVarint(int value) {
+        alignToByte();
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    void writeBytes(byte[] bytes) {
+        alignToByte();
+        for (byte b : bytes) {
+            writeByte(b);
+        }
+    }
+
+    private void alignToByte() {
+        if (pendingBits > 0) {
+            writeByte((int) pending);
+            pending = 0;
+            pendingBits = 0;
+        }
+    }
+
+    private void writeByte(int b) {
+        if (length == data.length) {
+            data = Arrays.copyOf(data, length * 2);
+        }
+        data[length++] = (byte) b;
+    }
+
+    byte[] toByteArray() {
+        alignToByte();
+        return Arrays.copyOf(data, length);
+    }
+
+    void clear() {
+        length = 0;
+        pending = 0;
+        pendingBits = 0;
+    }
+}
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: read values written by BitWriter
+ */
+class BitReader {
+    private final byte[] data;
+    private int position; // next whole byte
+    private long pending = 0;
+    private int pendingBits = 0;
+
+    BitReader(byte[] data, int offset) {
+        this.data = data;
+        this.position = offset;
+    }
+
+    int read(int bitCount) {
+        while (pendingBits < bitCount) {
+            pending |= (long) (data[position++] & 0xFF) << pendingBits;
+            pendingBits += 8;
+        }
+        int value = (int) (pending & ((1L << bitCount) - 1));
+        pending >>>= bitCount;
+        pendingBits -= bitCount;
+        return value;
+    }
+
+    int readVarint() {
+        pending = 0;
+        pendingBits = 0;
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[position++] & 0xFF;
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    int getBytePosition() {
+        return position;
+    }
+
+    void skipBytes(int count) {
+        pending = 0;
+        pendingBits = 0;
+        position += count;
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Part in MVC design pattern: Controller
+ * Purpose: play random games against a GameServer over many connections
+ * and report moves per second and the time from sending a request to
+ * reading its response. every connection keeps its own Board to choose
+ * moves, and the position sent back by the server is checked against it.
+ * with a pause, each connection waits that long after a response before
+ * its next move, like a player thinking, so many games can be open at
+ * once without the clients having to make all their moves
+ *
+ * usage:
+ * java GameLoadTest local <connections> <seconds> [threads] [spectators] [pauseMillis]
+ * java GameLoadTest <host> <port> <connections> <seconds> [threads] [spectators] [pauseMillis]
+ * "local" starts a server in the same process on a free port.
+ * spectators connections watch the game of the first connection
+ */
+public class GameLoadTest {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong skippedUpdates = new AtomicLong();
+    private static final int PUBLISHED_ID = 1;
+
+    public static void main(String[] args) throws Exception {
+        boolean local = args.length > 0 && args[0].equals("local");
+        int first = local ? 1 : 2;
+        if (args.length < first + 2) {
+            System.out.println("usage: java GameLoadTest local <connections> <seconds> [threads] [spectators] [pauseMillis]");
+            System.out.println("       java GameLoadTest <host> <port> <connections> <seconds> [threads] [spectators] [pauseMillis]");
+            return;
+        }
+        int connections = Integer.parseInt(args[first]);
+        int seconds = Integer.parseInt(args[first + 1]);
+        int threads = args.length > first + 2 ? Integer.parseInt(args[first + 2])
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int spectators = args.length > first + 3 ? Integer.parseInt(args[first + 3]) : 0;
+        long pauseMillis = args.length > first + 4 ? Long.parseLong(args[first + 4]) : 0;
+
+        GameServer server = null;
+        InetSocketAddress address;
+        if (local) {
+            server = new GameServer(0, threads);
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        } else {
+            address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+        }
+
+        GameLoadTest test = new GameLoadTest();
+        test.run(address, connections, spectators, threads, seconds * 1000L, pauseMillis);
+
+        LatencyHistogram h = test.latency;
+        System.out.printf("connections: %d, games: %d, requests: %d, %.0f requests/s, mismatches: %d%n",
+                connections, test.games.get(), h.getCount(), h.getCount() / (double) seconds, test.mismatches.get());
+        System.out.printf("round trip p50=%.1f p99=%.1f p99.9=%.1f max=%.1f us%n", h.getPercentile(50) / 1e3,
+                h.getPercentile(99) / 1e3, h.getPercentile(99.9) / 1e3, h.getMax() / 1e3);
+        if (spectators > 0) {
+            System.out.printf("spectators: %d, updates received: %d, updates skipped: %d%n", spectators,
+                    test.updates.get(), test.skippedUpdates.get());
+        }
+        if (server != null) {
+            LatencyHistogram s = server.getLatency();
+            System.out.printf("server handle p50=%.1f p99=%.1f max=%.1f us%n", s.getPercentile(50) / 1e3,
+                    s.getPercentile(99) / 1e3, s.getMax() / 1e3);
+            server.close();
+        }
+    }
+
+    /**
+     * open connections spread over threads client selectors and play until millis have passed.
+     * spectators connections watch the game of the first connection.
+     * each connection waits pauseMillis after a response before its next move
+     */
+    public void run(InetSocketAddress address, int connections, int spectators, int threads, long millis,
+            long pauseMillis) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<Future<?>>();
+        long end = System.currentTimeMillis() + millis;
+
+        for (int t = 0; t < threads; t++) {
+            int count = connections / threads + (t < connections % threads ? 1 : 0);
+            int watchers = spectators / threads + (t < spectators % threads ? 1 : 0);
+            boolean publish = t == 0 && spectators > 0;
+            long seed = t;
+            results.add(workers.submit(() -> {
+                playGames(address, count, watchers, publish, new Random(seed), end, pauseMillis * 1000000);
+                return null;
+            }));
+        }
+        for (Future<?> f : results) {
+            f.get();
+        }
+        workers.shutdown();
+    }
+
+    private void playGames(InetSocketAddress address, int count, int watchers, boolean publish, Random random,
+            long end, long pauseNanos) throws IOException {
+        try (Selector selector = Selector.open()) {
+            List<SocketChannel> channels = new ArrayList<SocketChannel>();
+            ArrayDeque<LoadClient> waiting = new ArrayDeque<LoadClient>(); // in order of nextAt
+            long start = System.nanoTime();
+            for (int i = 0; i < count + watchers; i++) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channels.add(channel);
+                if (i < count) {
+                    LoadClient client = new LoadClient(channel, random, waiting, pauseNanos);
+                    channel.register(selector, SelectionKey.OP_READ, client);
+                    if (publish && i == 0) {
+                        client.send(GameServer.PUBLISH, 0, 0, 0, PUBLISHED_ID);
+                    } else if (pauseNanos > 0) { // spread the first moves over one pause
+                        client.nextAt = start + pauseNanos * i / count;
+                        waiting.add(client);
+                    } else {
+                        client.sendNext();
+                    }
+                } else {
+                    WatchClient watcher = new WatchClient(channel);
+                    channel.register(selector, SelectionKey.OP_READ, watcher);
+                    watcher.watch();
+                }
+            }
+
+            while (System.currentTimeMillis() < end) {
+                long timeout = waiting.isEmpty() ? 100 : (waiting.peek().nextAt - System.nanoTime()) / 1000000;
+                selector.select(Math.max(1, Math.min(100, timeout)));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ((Client) key.attachment()).read();
+                }
+                for (long now = System.nanoTime(); !waiting.isEmpty() && waiting.peek().nextAt <= now;) {
+                    waiting.poll().sendNext();
+                }
+            }
+            for (SocketChannel c : channels) {
+                c.close();
+            }
+        }
+    }
+
+    private interface Client {
+        void read() throws IOException;
+    }
+
+    /**
+     * Purpose: one connection of the load test that watches the published
+     * game and counts updates. a jump in total turn means updates were
+     * skipped because the spectator was dropped to resync
+     */
+    private class WatchClient implements Client {
+        private final SocketChannel channel;
+        private final ByteBuffer message = ByteBuffer.allocate(GameServer.RESPONSE_SIZE);
+        private int lastTurn = -1;
+
+        WatchClient(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void watch() throws IOException {
+            ByteBuffer request = ByteBuffer.wrap(new byte[] { GameServer.WATCH, 0, 0, 0, PUBLISHED_ID });
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+        }
+
+        public void read() throws IOException {
+            if (channel.read(message) < 0) {
+                throw new EOFException("server closed the connection");
+            }
+            while (!message.hasRemaining()) {
+                int type = message.get(0) & 0x7F;
+                if (type == GameServer.WATCH && message.get(1) == 0) {
+                    watch(); // game not published yet
+                } else if (type == GameServer.UPDATE) {
+                    updates.incrementAndGet();
+                    int turn = message.get(2 + 23) & 0xFF;
+                    if (lastTurn >= 0 && turn > lastTurn + 1) {
+                        skippedUpdates.addAndGet(turn - lastTurn - 1);
+                    }
+                    lastTurn = turn;
+                }
+                message.clear();
+                if (channel.read(message) <= 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Purpose: one connection of the load test with its own copy of the game
+     */
+    private class LoadClient implements Client {
+        private final SocketChannel channel;
+        private final Random random;
+        private final ArrayDeque<LoadClient> waiting;
+        private final long pauseNanos;
+        private final Board board = new Board();
+        private final ByteBuffer request = ByteBuffer.allocate(GameServer.REQUEST_SIZE);
+        private final ByteBuffer response = ByteBuffer.allocate(GameServer.RESPONSE_SIZE);
+        private final byte[] expected = new byte[PositionCodec.RECORD_SIZE];
+        private long sentAt;
+        long nextAt; // when to send the next move while in waiting
+
+        LoadClient(SocketChannel channel, Random random, ArrayDeque<LoadClient> waiting, long pauseNanos) {
+            this.channel = channel;
+            this.random = random;
+            this.waiting = waiting;
+            this.pauseNanos = pauseNanos;
+        }
+
+        public void read() throws IOException {
+            if (channel.read(response) < 0) {
+                throw new EOFException("server closed the connection");
+            }
+            if (response.hasRemaining()) {
+                return; // rest of the response not here yet
+            }
+            latency.record(System.nanoTime() - sentAt);
+
+            PositionCodec.pack(board, board.getWinner(), expected, 0);
+            if (response.get(1) != 1 || !Arrays.equals(response.array(), 2, GameServer.RESPONSE_SIZE, expected, 0,
+                    PositionCodec.RECORD_SIZE)) {
+                mismatches.incrementAndGet();
+                board.setBoard(); // start again together
+                send(GameServer.RESET, 0, 0, 0, 0);
+                return;
+            }
+            response.clear();
+            if (pauseNanos > 0) {
+                nextAt = System.nanoTime() + pauseNanos;
+                waiting.add(this);
+            } else {
+                sendNext();
+            }
+        }
+
+        /**
+         * make a random move on the local board and send it, or start a new game
+         */
+        void sendNext() throws IOException {
+            if (board.getWinner() == 0 && board.getSumTurn() < TrainingExporter.MAX_PLIES) {
+                List<Integer[]> moves = board.getLegalMoves();
+                Collections.shuffle(moves, random);
+                for (Integer[] m : moves) {
+                    if (board.tryMove(m[0], m[1], m[2], m[3])) {
+                        send(GameServer.MOVE, m[0], m[1], m[2], m[3]);
+                        return;
+                    }
+                }
+            }
+            games.incrementAndGet();
+            board.setBoard();
+            send(GameServer.RESET, 0, 0, 0, 0);
+        }
+
+        void send(byte type, int a, int b, int c, int d) throws IOException {
+            response.clear();
+            request.clear();
+            request.put(type).put((byte) a).put((byte) b).put((byte) c).put((byte) d).flip();
+            sentAt = System.nanoTime();
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+        }
+    }
+}
@@ -0,0 +1,479 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Part in MVC design pattern: Controller
+ * Controller's design pattern: Adapter
+ * Part in Adapter design pattern: Client
+ *
+ * Purpose: serve games to remote clients without a window. every TCP
+ * connection is one game with its own BoardAdapter. connections are
+ * shared by a few selector threads, so one thread serves thousands of
+ * games and no thread waits on a slow client
+ *
+ * protocol, all messages have a fixed size:
+ * request (REQUEST_SIZE bytes): [type][a][b][c][d]
+ * MOVE a b c d = move from (a, b) to (c, d)
+ * RESET, POSITION, UNDO = a to d are ignored
+ * PUBLISH a b c d = let other connections watch this game with id abcd
+ * WATCH a b c d = get an UPDATE each time game abcd changes
+ * response (RESPONSE_SIZE bytes): [type | 0x80][status][position record]
+ * status is 1 if the request was done, 0 if refused.
+ * the record is the position after the request (see PositionCodec)
+ * update (RESPONSE_SIZE bytes): [UPDATE | 0x80][status][position record]
+ * status is 0 when the watched game was closed. a spectator that falls
+ * SPECTATOR_QUEUE updates behind is sent only the newest one
+ *
+ * usage: java GameServer [port] [threads]
+ */
+public class GameServer {
+    public static final int DEFAULT_PORT = 7070;
+    public static final int REQUEST_SIZE = 5;
+    public static final int RESPONSE_SIZE = 2 + PositionCodec.RECORD_SIZE;
+    public static final byte MOVE = 1;
+    public static final byte RESET = 2;
+    public static final byte POSITION = 3;
+    public static final byte UNDO = 4;
+    public static final byte PUBLISH = 5;
+    public static final byte WATCH = 6;
+    public static final byte UPDATE = 7;
+    public static final int SPECTATOR_QUEUE = 64;
+
+    final ConcurrentHashMap<Integer, SpectatorHub> publishedGames = new ConcurrentHashMap<Integer, SpectatorHub>();
+
+    private final ServerSocketChannel serverChannel;
+    private final ServerLoop[] loops;
+    private final Thread acceptThread;
+
+    /**
+     * listen on port (0 for any free port) with threads selector threads
+     */
+    public GameServer(int port, int threads) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+
+        loops = new ServerLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new ServerLoop(this);
+            Thread t = new Thread(loops[i], "Talabia-server-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        acceptThread = new Thread(this::acceptConnections, "Talabia-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * give new connections to the selector threads in turn
+     */
+    private void acceptConnections() {
+        int next = 0;
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].add(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+        }
+    }
+
+    public int getSessionCount() {
+        int count = 0;
+        for (ServerLoop l : loops) {
+            count += l.sessions.get();
+        }
+        return count;
+    }
+
+    /**
+     * time taken to handle requests, from all selector threads
+     */
+    public LatencyHistogram getLatency() {
+        LatencyHistogram all = new LatencyHistogram();
+        for (ServerLoop l : loops) {
+            all.add(l.latency);
+        }
+        return all;
+    }
+
+    /**
+     * number of times a spectator was dropped to resync, in all games open now
+     */
+    public long getSpectatorDrops() {
+        long drops = 0;
+        for (SpectatorHub hub : publishedGames.values()) {
+            drops += hub.getDropCount();
+        }
+        return drops;
+    }
+
+    public void close() throws IOException {
+        serverChannel.close();
+        for (ServerLoop l : loops) {
+            l.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        GameServer server = new GameServer(port, threads);
+        System.out.println("Talabia server on port " + server.getPort() + " with " + threads + " threads");
+
+        while (true) {
+            Thread.sleep(10000);
+            LatencyHistogram h = server.getLatency();
+            System.out.printf("games: %d, requests: %d, handle p50=%.1f p99=%.1f max=%.1f us%n",
+                    server.getSessionCount(), h.getCount(), h.getPercentile(50) / 1e3,
+                    h.getPercentile(99) / 1e3, h.getMax() / 1e3);
+        }
+    }
+}
+
+/**
+ * Part in MVC design pattern: Controller
+ * Purpose: one selector thread of GameServer and the games of its connections.
+ * games are kept as GameState and loaded into the one BoardAdapter of the
+ * thread when a request comes, and the read and write buffers are shared,
+ * so an idle game costs its GameState and its connection
+ */
+class ServerLoop implements Runnable {
+    static final int PIPELINE = 16; // requests handled per read
+
+    final GameServer server;
+    final AtomicInteger sessions = new AtomicInteger();
+    final LatencyHistogram latency = new LatencyHistogram();
+    final ByteBuffer readBuffer = ByteBuffer.allocateDirect(GameServer.REQUEST_SIZE * PIPELINE);
+    final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(GameServer.RESPONSE_SIZE * PIPELINE);
+    private final BoardAdapter game = new BoardAdapter(); // shared by all games of this thread
+    private GameState loadedState = null; // game on the board now, null if none
+    private final Selector selector;
+    private final Queue<SocketChannel> newChannels = new ConcurrentLinkedQueue<SocketChannel>();
+    private final Queue<GameSession> wokenSessions = new ConcurrentLinkedQueue<GameSession>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+
+    ServerLoop(GameServer server) throws IOException {
+        this.server = server;
+        selector = Selector.open();
+    }
+
+    /**
+     * called by any thread when a spectator of this loop has updates.
+     * the selector is woken once however many spectators are woken
+     */
+    void wake(GameSession session) {
+        wokenSessions.add(session);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * called by the accept thread, the channel is registered by this loop
+     */
+    void add(SocketChannel channel) {
+        newChannels.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * get the shared game with state loaded on its board
+     */
+    BoardAdapter load(GameState state) {
+        if (loadedState != state) {
+            state.load(game.board);
+            loadedState = state;
+        }
+        return game;
+    }
+
+    /**
+     * state was changed without the board, so load it again next time
+     */
+    void unload(GameState state) {
+        if (loadedState == state) {
+            loadedState = null;
+        }
+    }
+
+    public void run() {
+        while (selector.isOpen()) {
+            try {
+                selector.select();
+                wakeupPending.set(false);
+                for (GameSession session; (session = wokenSessions.poll()) != null;) {
+                    try {
+                        session.sendUpdates();
+                    } catch (IOException e) {
+                        session.close();
+                    }
+                }
+                for (SocketChannel channel; (channel = newChannels.poll()) != null;) {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new GameSession(this, channel, key));
+                    sessions.incrementAndGet();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    GameSession session = (GameSession) key.attachment();
+                    try {
+                        if (!key.isValid()) {
+                            continue; // closed while sending updates
+                        } else if (key.isReadable()) {
+                            session.read();
+                        } else if (key.isWritable()) {
+                            session.write();
+                        }
+                    } catch (IOException e) { // client went away
+                        session.close();
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+        }
+    }
+
+    void close() throws IOException {
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+}
+
+/**
+ * Part in MVC design pattern: Controller
+ * Controller's design pattern: Adapter
+ * Part in Adapter design pattern: Client
+ * Purpose: one connection and its game. requests are handled in order.
+ * bytes of an unfinished request, or responses the client has not read
+ * yet, are copied out of the shared buffers into the session. reading
+ * stops while responses wait, so a client that does not read cannot
+ * make the server buffer without limit
+ */
+class GameSession {
+    private final ServerLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final GameState state = new GameState();
+    private final byte[] record = new byte[PositionCodec.RECORD_SIZE];
+    private byte[] pendingRequests = null;
+    private ByteBuffer pendingResponses = null;
+    private SpectatorHub publishedHub = null; // spectators of this game
+    private int publishedId;
+    private SpectatorHub watchedHub = null; // game this connection watches
+    private Spectator watching = null;
+    private boolean inProgress = true; // counted in ModelMetrics games in progress
+
+    GameSession(ServerLoop loop, SocketChannel channel, SelectionKey key) {
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        ModelMetrics.countGameInProgress(true);
+    }
+
+    void read() throws IOException {
+        ByteBuffer in = takePendingRequests();
+        if (channel.read(in) < 0) {
+            close();
+            return;
+        }
+        in.flip();
+        handleRequests(in);
+    }
+
+    void write() throws IOException {
+        channel.write(pendingResponses);
+        if (pendingResponses.hasRemaining()) {
+            return;
+        }
+        pendingResponses = null;
+        ByteBuffer in = takePendingRequests();
+        in.flip();
+        handleRequests(in);
+        if (watching != null) {
+            sendUpdates();
+        }
+    }
+
+    /**
+     * write updates of the watched game. nothing is written while earlier
+     * responses wait, so updates pile up in the spectator queue until
+     * it is dropped to resync
+     */
+    void sendUpdates() throws IOException {
+        if (watching == null || pendingResponses != null || !key.isValid()) {
+            return;
+        }
+        ByteBuffer out = loop.writeBuffer;
+        out.clear();
+        boolean drained = watching.drain(ServerLoop.PIPELINE, out::put);
+        out.flip();
+        channel.write(out);
+        if (out.hasRemaining()) {
+            pendingResponses = ByteBuffer.allocate(out.remaining());
+            pendingResponses.put(out).flip();
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else if (!drained) {
+            loop.wake(this);
+        }
+    }
+
+    private ByteBuffer takePendingRequests() {
+        ByteBuffer in = loop.readBuffer;
+        in.clear();
+        if (pendingRequests != null) {
+            in.put(pendingRequests);
+            pendingRequests = null;
+        }
+        return in;
+    }
+
+    private void handleRequests(ByteBuffer in) throws IOException {
+        ByteBuffer out = loop.writeBuffer;
+        out.clear();
+        while (in.remaining() >= GameServer.REQUEST_SIZE) {
+            long start = System.nanoTime();
+            handle(in.get(), in.get(), in.get(), in.get(), in.get(), out);
+            loop.latency.record(System.nanoTime() - start);
+        }
+        if (in.hasRemaining()) {
+            pendingRequests = new byte[in.remaining()];
+            in.get(pendingRequests);
+        }
+
+        out.flip();
+        channel.write(out);
+        if (out.hasRemaining()) {
+            pendingResponses = ByteBuffer.allocate(out.remaining());
+            pendingResponses.put(out).flip();
+        }
+
+        // wait for the client to read before taking more requests
+        key.interestOps(pendingResponses != null ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void handle(byte type, int a, int b, int c, int d, ByteBuffer out) {
+        boolean done;
+        switch (type) {
+            case GameServer.MOVE:
+                BoardAdapter game = loop.load(state);
+                done = a >= 0 && a < 7 && b >= 0 && b < 6 && game.tryMove(a, b, c, d);
+                if (done) {
+                    state.store(game.board);
+                }
+                break;
+            case GameServer.RESET:
+                state.reset();
+                loop.unload(state);
+                done = true;
+                break;
+            case GameServer.POSITION:
+                done = true;
+                break;
+            case GameServer.UNDO:
+                done = state.undo();
+                loop.unload(state);
+                break;
+            case GameServer.PUBLISH:
+                done = publish(a << 24 | (b & 0xFF) << 16 | (c & 0xFF) << 8 | (d & 0xFF));
+                break;
+            case GameServer.WATCH:
+                done = watch(a << 24 | (b & 0xFF) << 16 | (c & 0xFF) << 8 | (d & 0xFF));
+                break;
+            default:
+                done = false;
+                break;
+        }
+
+        if (done && state.getWinner() == 0 != inProgress) { // won, or back from a win by RESET or UNDO
+            inProgress = !inProgress;
+            ModelMetrics.countGameInProgress(inProgress);
+        }
+        if (done && publishedHub != null && type != GameServer.POSITION && type != GameServer.WATCH) {
+            publishedHub.publish(makeUpdate(1)); // encoded once for all spectators
+        }
+
+        out.put((byte) (type | 0x80));
+        out.put((byte) (done ? 1 : 0));
+        state.getRecord(record, 0);
+        out.put(record);
+    }
+
+    private boolean publish(int id) {
+        if (publishedHub != null) {
+            return false;
+        }
+        SpectatorHub hub = new SpectatorHub(makeUpdate(1));
+        if (loop.server.publishedGames.putIfAbsent(id, hub) != null) {
+            return false; // id taken
+        }
+        publishedHub = hub;
+        publishedId = id;
+        return true;
+    }
+
+    private boolean watch(int id) {
+        SpectatorHub hub = loop.server.publishedGames.get(id);
+        if (hub == null || watching != null) {
+            return false;
+        }
+        watchedHub = hub;
+        watching = hub.subscribe(GameServer.SPECTATOR_QUEUE, () -> loop.wake(this));
+        return true;
+    }
+
+    private byte[] makeUpdate(int status) {
+        byte[] update = new byte[GameServer.RESPONSE_SIZE];
+        update[0] = (byte) (GameServer.UPDATE | 0x80);
+        update[1] = (byte) status;
+        state.getRecord(update, 2);
+        return update;
+    }
+
+    void close() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        loop.sessions.decrementAndGet();
+        if (inProgress) {
+            ModelMetrics.countGameInProgress(false);
+        }
+        if (publishedHub != null) {
+            loop.server.publishedGames.remove(publishedId, publishedHub);
+            publishedHub.close(makeUpdate(0));
+        }
+        if (watching != null) {
+            watchedHub.unsubscribe(watching);
+        }
+        loop.unload(state);
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Part in MVC design pattern: Controller
+ * Controller's design pattern: Adapter
+ * Part in Adapter design pattern: Client
+ *
+ * Purpose: play many complete games without a window through
+ * BoardController, one game at a time on each worker thread, and report
+ * games per second, game length, results and where the time goes.
+ * time is split by step (move generation, policy, making the move) and
+ * by phase of the game (opening: first OPENING_PLIES plies, endgame:
+ * ENDGAME_PIECES pieces or fewer, middlegame: the rest)
+ *
+ * usage: java GameSimulator [games] [threads] [random|capture] [seed]
+ */
+public class GameSimulator {
+    private static final int OPENING_PLIES = 20;
+    private static final int ENDGAME_PIECES = 10;
+    private static final String[] PHASES = { "opening", "middlegame", "endgame" };
+
+    private final LongAdder games = new LongAdder();
+    private final LongAdder plies = new LongAdder();
+    private final LongAdder decisive = new LongAdder();
+    private final LongAdder stalemates = new LongAdder();
+    private final LongAdder unfinished = new LongAdder(); // stopped at MAX_PLIES or no move could be made
+    private final LongAdder generateNanos = new LongAdder();
+    private final LongAdder chooseNanos = new LongAdder();
+    private final LongAdder moveNanos = new LongAdder();
+    private final LongAdder[] phaseNanos = { new LongAdder(), new LongAdder(), new LongAdder() };
+    private final LongAdder[] phasePlies = { new LongAdder(), new LongAdder(), new LongAdder() };
+
+    static MovePolicy createPolicy(String name) {
+        switch (name) {
+            case "random":
+                return new RandomPolicy();
+            case "capture":
+                return new CapturePolicy();
+        }
+        throw new IllegalArgumentException("unknown policy " + name);
+    }
+
+    /**
+     * play one game from the start position with the same policy for both players
+     */
+    public void playGame(BoardController game, MovePolicy policy, Random random) {
+        game.resetGame();
+        int ply = 0;
+
+        while (game.getWinner() == 0 && ply < TrainingExporter.MAX_PLIES) {
+            int phase = ply < OPENING_PLIES ? 0 : game.getBoard().size() <= ENDGAME_PIECES ? 2 : 1;
+            long start = System.nanoTime();
+            List<Integer[]> moves = game.getLegalMoves();
+            long generated = System.nanoTime();
+            long choosing = 0;
+            boolean moved = false;
+
+            while (!moves.isEmpty()) {
+                long chooseStart = System.nanoTime();
+                Integer[] m = policy.chooseMove(game, moves, random);
+                choosing += System.nanoTime() - chooseStart;
+                if (game.tryMove(m[0], m[1], m[2], m[3])) {
+                    moved = true;
+                    break;
+                }
+                moves.remove(m); // refused, Sun would be in check
+            }
+
+            long end = System.nanoTime();
+            generateNanos.add(generated - start);
+            chooseNanos.add(choosing);
+            moveNanos.add(end - generated - choosing);
+            phaseNanos[phase].add(end - start);
+            phasePlies[phase].increment();
+            if (!moved) {
+                break;
+            }
+            ply++;
+        }
+
+        games.increment();
+        plies.add(game.getTotalTurn());
+        if (game.getWinner() > 0) {
+            decisive.increment();
+        } else if (game.getWinner() == -1) {
+            stalemates.increment();
+        } else {
+            unfinished.increment();
+        }
+    }
+
+    public String report(double seconds) {
+        long count = Math.max(games.sum(), 1);
+        long time = Math.max(generateNanos.sum() + chooseNanos.sum() + moveNanos.sum(), 1);
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("games: %d, %.0f games/s (%.0f per hour), average length: %.1f turns%n",
+                games.sum(), games.sum() / seconds, games.sum() / seconds * 3600, (double) plies.sum() / count));
+        text.append(String.format("decisive: %.1f%%, stalemate: %.1f%%, unfinished: %.1f%%%n",
+                100.0 * decisive.sum() / count, 100.0 * stalemates.sum() / count, 100.0 * unfinished.sum() / count));
+        text.append(String.format("time: move generation %.0f%%, policy %.0f%%, making moves %.0f%%%n",
+                100.0 * generateNanos.sum() / time, 100.0 * chooseNanos.sum() / time, 100.0 * moveNanos.sum() / time));
+        for (int i = 0; i < PHASES.length; i++) {
+            long phase = Math.max(phasePlies[i].sum(), 1);
+            text.append(String.format("%-10s plies: %9d, %8.1f us/ply%n", PHASES[i], phasePlies[i].sum(),
+                    phaseNanos[i].sum() / 1e3 / phase));
+        }
+        return text.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        long gameCount = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String policyName = args.length > 2 ? args[2] : "random";
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        GameSimulator simulator = new GameSimulator();
+        AtomicLong next = new AtomicLong();
+        long start = System.nanoTime();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed + t);
+            results.add(workers.submit(() -> {
+                BoardController game = new BoardAdapter();
+                MovePolicy policy = createPolicy(policyName);
+                while (next.getAndIncrement() < gameCount) {
+                    simulator.playGame(game, policy, random);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : results) {
+            f.get();
+        }
+        workers.shutdown();
+
+        System.out.println("policy " + policyName + ", " + threads + " threads, seed " + seed);
+        System.out.print(simulator.report((System.nanoTime() - start) / 1e9));
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: a game kept in a few dozen bytes while it waits for its next
+ * request, instead of a Board with a list of Piece objects (see
+ * Board.packState). the last UNDO_DEPTH states are kept so moves can
+ * be taken back. a shared Board is loaded from the state, changed, and
+ * stored back
+ */
+public final class GameState {
+    public static final int UNDO_DEPTH = 4;
+    private static final int SIZE = Board.STATE_SIZE;
+    private static final byte[] START = new byte[SIZE];
+
+    static {
+        new Board().packState(START, 0);
+    }
+
+    private final byte[] state = new byte[SIZE];
+    private byte[] history = null; // ring of UNDO_DEPTH states, made on the first move
+    private int historyEnd = 0;
+    private int historyCount = 0;
+
+    /**
+     * the start position
+     */
+    public GameState() {
+        reset();
+    }
+
+    /**
+     * go back to the start position and forget the kept states
+     */
+    public void reset() {
+        System.arraycopy(START, 0, state, 0, SIZE);
+        historyCount = 0;
+    }
+
+    /**
+     * replace the game on board with this game
+     */
+    public void load(Board board) {
+        board.setState(state, 0);
+    }
+
+    /**
+     * keep the game on board, the current state can be taken back with undo
+     */
+    public void store(Board board) {
+        if (history == null) {
+            history = new byte[UNDO_DEPTH * SIZE];
+        }
+        System.arraycopy(state, 0, history, historyEnd * SIZE, SIZE);
+        historyEnd = (historyEnd + 1) % UNDO_DEPTH;
+        historyCount = Math.min(historyCount + 1, UNDO_DEPTH);
+        board.packState(state, 0);
+    }
+
+    /**
+     * go back to the state before the last store.
+     * returns false if no state is kept
+     */
+    public boolean undo() {
+        if (historyCount == 0) {
+            return false;
+        }
+        historyEnd = (historyEnd + UNDO_DEPTH - 1) % UNDO_DEPTH;
+        historyCount--;
+        System.arraycopy(history, historyEnd * SIZE, state, 0, SIZE);
+        return true;
+    }
+
+    /**
+     * 0 while the game goes on, else 1, 2 or -1 (stalemate)
+     */
+    public int getWinner() {
+        return state[57];
+    }
+
+    public int getSumTurn() {
+        return Board.getSumTurn(state, 0);
+    }
+
+    /**
+     * write the position as a PositionCodec record without a Board
+     */
+    public void getRecord(byte[] record, int offset) {
+        java.util.Arrays.fill(record, offset, offset + PositionCodec.RECORD_SIZE, (byte) 0);
+        for (int i = 0; i < 56 && state[i + 1] != 0; i += 2) {
+            int square = state[i];
+            record[offset + (square >> 1)] |= state[i + 1] << ((square & 1) << 2);
+        }
+        int winner = state[57];
+        record[offset + 21] = state[56];
+        record[offset + 22] = (byte) (winner == -1 ? 3 : winner);
+        record[offset + 23] = (byte) Math.min(getSumTurn(), 255);
+    }
+}
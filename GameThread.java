@@ -0,0 +1,298 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+
+/**
+ * Part in MVC design pattern: Controller
+ * Controller's design pattern: Adapter
+ * Part in Adapter design pattern: Client
+ *
+ * Purpose: run all BoardController calls on one model thread so a slow
+ * computation never blocks the Swing event thread. clicks and menu actions
+ * become commands on the model thread, and after each command an immutable
+ * GameFrame is published. the renderer is called on the event thread with
+ * only the newest frame, so many frames published between two repaints
+ * cost one repaint
+ */
+public class GameThread {
+    private final BoardController controller;
+    private final Consumer<GameFrame> renderer;
+    private final ExecutorService modelExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Talabia-model");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicReference<GameFrame> latestFrame = new AtomicReference<GameFrame>();
+    private final AtomicLong unrenderedSquares = new AtomicLong(Board.ALL_SQUARES);
+    private final AtomicBoolean renderScheduled = new AtomicBoolean(false);
+    private final LatencyMonitor latency;
+
+    // only used on the model thread
+    private int moveState = 0;
+    private int selectedX;
+    private int selectedY;
+    private long clickTime = 0; // System.nanoTime() of the click being handled, 0 if none
+
+    /**
+     * renderer is called on the event thread
+     */
+    public GameThread(BoardController controller, Consumer<GameFrame> renderer) {
+        this(controller, renderer, null);
+    }
+
+    /**
+     * latency records the time of getMove and move, it may be null
+     */
+    public GameThread(BoardController controller, Consumer<GameFrame> renderer, LatencyMonitor latency) {
+        this.controller = controller;
+        this.renderer = renderer;
+        this.latency = latency;
+        modelExecutor.execute(() -> publish(GameFrame.NO_MOVES, -1, -1, null));
+    }
+
+    /**
+     * select a piece, or move the selected piece to (posX, posY)
+     */
+    public void click(int posX, int posY) {
+        long time = System.nanoTime();
+        modelExecutor.execute(() -> {
+            if (controller.getWinner() != 0) {
+                return;
+            }
+            clickTime = time;
+
+            if (moveState == 0) { // select piece
+                selectedX = posX;
+                selectedY = posY;
+                moveState = 1;
+                long start = System.nanoTime();
+                List<Integer[]> moves = controller.getMove(posX, posY);
+                record(LatencyMonitor.GET_MOVE, start);
+                publish(copy(moves), posX, posY, null);
+
+            } else { // move piece
+                int totalTurn = controller.getTotalTurn();
+                long start = System.nanoTime();
+                controller.move(posX, posY);
+                record(LatencyMonitor.MOVE, start);
+                moveState = 0;
+
+                if (controller.getTotalTurn() != totalTurn) {
+                    markChanged(controller.getChangedSquares());
+                    int[] move = { selectedX, selectedY, posX, posY };
+                    publish(GameFrame.NO_MOVES, -1, -1, move);
+                } else {
+                    publish(GameFrame.NO_MOVES, -1, -1, null);
+                }
+            }
+        });
+    }
+
+    public void resetGame() {
+        run(() -> controller.resetGame());
+    }
+
+    /**
+     * select the piece of the book move and show only its book square,
+     * so the next click on that square makes the move
+     */
+    public void showBookMove() {
+        modelExecutor.execute(() -> {
+            Integer[] m = controller.getBookMove();
+            if (m == null) {
+                return;
+            }
+            for (Integer[] to : controller.getMove(m[0], m[1])) {
+                if (to[0].equals(m[2]) && to[1].equals(m[3])) {
+                    selectedX = m[0];
+                    selectedY = m[1];
+                    moveState = 1;
+                    Integer[] square = { m[2], m[3] };
+                    publish(Collections.singletonList(square), m[0], m[1], null);
+                    return;
+                }
+            }
+        });
+    }
+
+    public void undo() {
+        run(() -> controller.undo());
+    }
+
+    public void redo() {
+        run(() -> controller.redo());
+    }
+
+    public void setAutosave(int moves) {
+        modelExecutor.execute(() -> controller.setAutosave(moves));
+    }
+
+    /**
+     * save on the save thread, the board is copied on the model thread
+     */
+    public void saveGame() {
+        modelExecutor.execute(() -> controller.saveGameAsync().whenComplete((result, e) -> {
+            if (e != null) {
+                System.out.println(e);
+            }
+        }));
+    }
+
+    /**
+     * load on the save thread, the board is replaced on the model thread
+     */
+    public void loadGame() {
+        modelExecutor.execute(() -> controller.loadGameAsync(modelExecutor).whenCompleteAsync((result, e) -> {
+            if (e != null) {
+                System.out.println(e);
+                return;
+            }
+            moveState = 0;
+            unrenderedSquares.set(Board.ALL_SQUARES);
+            publish(GameFrame.NO_MOVES, -1, -1, null);
+        }, modelExecutor));
+    }
+
+    /**
+     * run a command that replaces the board, then publish all squares
+     */
+    private void run(Runnable command) {
+        modelExecutor.execute(() -> {
+            command.run();
+            moveState = 0;
+            markChanged(controller.getChangedSquares());
+            publish(GameFrame.NO_MOVES, -1, -1, null);
+        });
+    }
+
+    public GameFrame getLatestFrame() {
+        return latestFrame.get();
+    }
+
+    /**
+     * get squares changed since the renderer last asked, as bits (y * 7 + x).
+     * squares of frames that were skipped are included
+     */
+    public long takeChangedSquares() {
+        return unrenderedSquares.getAndSet(0);
+    }
+
+    private void record(String step, long start) {
+        if (latency != null) {
+            latency.record(step, System.nanoTime() - start);
+        }
+    }
+
+    private void markChanged(List<Integer[]> squares) {
+        long bits = 0;
+        for (Integer[] s : squares) {
+            bits |= 1L << (s[1] * 7 + s[0]);
+        }
+        unrenderedSquares.accumulateAndGet(bits, (a, b) -> a | b);
+    }
+
+    /**
+     * publish a frame. move is { fromX, fromY, toX, toY } of a move just made, or null
+     */
+    private void publish(List<Integer[]> moves, int clickX, int clickY, int[] move) {
+        latestFrame.set(new GameFrame(controller.getSnapshot(), moves, clickX, clickY, move, clickTime));
+        clickTime = 0;
+
+        if (renderScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                renderScheduled.set(false); // frames published from now on schedule a new render
+                renderer.accept(latestFrame.get());
+            });
+        }
+    }
+
+    private static List<Integer[]> copy(List<Integer[]> moves) {
+        List<Integer[]> copy = new ArrayList<Integer[]>(moves.size());
+        for (Integer[] m : moves) {
+            copy.add(m.clone());
+        }
+        return Collections.unmodifiableList(copy);
+    }
+}
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: immutable state of the game for one repaint: the board, the
+ * legal moves of a selected piece, and the move just made (for animation)
+ */
+final class GameFrame {
+    static final List<Integer[]> NO_MOVES = Collections.emptyList();
+
+    private final BoardSnapshot board;
+    private final List<Integer[]> moves;
+    private final int clickX;
+    private final int clickY;
+    private final int[] move;
+    private final long clickTime;
+
+    GameFrame(BoardSnapshot board, List<Integer[]> moves, int clickX, int clickY, int[] move, long clickTime) {
+        this.board = board;
+        this.moves = moves;
+        this.clickX = clickX;
+        this.clickY = clickY;
+        this.move = move;
+        this.clickTime = clickTime;
+    }
+
+    public BoardSnapshot getBoard() {
+        return board;
+    }
+
+    /**
+     * legal moves of the selected piece, empty if no piece is selected
+     */
+    public List<Integer[]> getMoves() {
+        return moves;
+    }
+
+    /**
+     * square clicked to select a piece, -1 if none
+     */
+    public int getClickX() {
+        return clickX;
+    }
+
+    public int getClickY() {
+        return clickY;
+    }
+
+    /**
+     * true if this frame shows a move just made
+     */
+    public boolean isMoved() {
+        return move != null;
+    }
+
+    /**
+     * squares of the move just made, as seen before the board flipped
+     */
+    public int getFromX() {
+        return move[0];
+    }
+
+    public int getFromY() {
+        return move[1];
+    }
+
+    public int getToX() {
+        return move[2];
+    }
+
+    public int getToY() {
+        return move[3];
+    }
+
+    /**
+     * System.nanoTime() of the click that made this frame, 0 if none
+     */
+    public long getClickTime() {
+        return clickTime;
+    }
+}
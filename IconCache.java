@@ -0,0 +1,148 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Part in MVC design pattern: View
+ * View's design pattern: Flyweight
+ * Part in Flyweight design pattern: Flyweight factory
+ * 
+ * Purpose: decode every piece image once and share icons scaled to the
+ * tile size between all tiles, so redrawing the board does not read or
+ * decode any image file. until the images are set, a placeholder with
+ * the piece's letter is drawn instead
+ */
+public class IconCache {
+    static final String[] IMAGE_NAMES = { "Point_up", "Point_down", "Hourglass", "Time", "Plus", "Sun" };
+
+    private Map<String, Image> images = new HashMap<String, Image>(); // decoded images by path
+    private Map<String, Icon> icons = new HashMap<String, Icon>(); // images scaled to the tile size
+    private int width = 0;
+    private int height = 0;
+
+    private boolean loaded = false;
+
+    /**
+     * set the decoded images, keyed by image path (see SpriteAtlas.load)
+     */
+    public void setImages(Map<String, Image> images) {
+        this.images = new HashMap<String, Image>(images);
+        icons.clear();
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * path of a piece image, e.g. "Images_p1\\Point_up.png"
+     */
+    public static String getImagePath(int player, String name, String direction) {
+        if (name.equals("Point")) {
+            return "Images_p" + player + "\\" + "Point_" + direction + ".png";
+        }
+        return "Images_p" + player + "\\" + name + ".png";
+    }
+
+    /**
+     * set the size icons are scaled to.
+     * icons are scaled again when next asked for
+     */
+    public void setSize(int width, int height) {
+        if (width != this.width || height != this.height) {
+            this.width = width;
+            this.height = height;
+            icons.clear();
+        }
+    }
+
+    /**
+     * get the icon of an image path, scaled to fit the size
+     * returns null for a null path
+     */
+    public Icon getIcon(String path) {
+        if (path == null) {
+            return null;
+        }
+
+        Icon icon = icons.get(path);
+        if (icon == null) {
+            Image image = images.get(path);
+            if (!loaded) {
+                icon = new PlaceholderIcon(path, width, height);
+            } else if (image == null) { // not in the atlas
+                image = new ImageIcon(path).getImage();
+                images.put(path, image);
+                icon = new ImageIcon(scale(image));
+            } else {
+                icon = new ImageIcon(scale(image));
+            }
+            icons.put(path, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * scale image to fit the size, keeping its aspect ratio
+     */
+    private Image scale(Image image) {
+        int imageWidth = image.getWidth(null);
+        int imageHeight = image.getHeight(null);
+        if (width <= 0 || height <= 0 || imageWidth <= 0 || imageHeight <= 0) {
+            return image; // size unknown before layout or image missing
+        }
+
+        double ratio = Math.min((double) width / imageWidth, (double) height / imageHeight);
+        int scaledWidth = Math.max(1, (int) (imageWidth * ratio));
+        int scaledHeight = Math.max(1, (int) (imageHeight * ratio));
+
+        BufferedImage scaled = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+        g.dispose();
+        return scaled;
+    }
+}
+
+/**
+ * Part in MVC design pattern: View
+ * Purpose: stand in for a piece image while the images are loading.
+ * draws the first letter of the piece in a circle of the player's colour
+ */
+class PlaceholderIcon implements Icon {
+    private final String letter;
+    private final boolean playerOne;
+    private final int size;
+
+    PlaceholderIcon(String path, int width, int height) {
+        int nameStart = path.lastIndexOf('\\') + 1;
+        this.letter = path.substring(nameStart, nameStart + 1);
+        this.playerOne = path.startsWith("Images_p1");
+        this.size = Math.max(16, Math.min(width, height));
+    }
+
+    public int getIconWidth() {
+        return size;
+    }
+
+    public int getIconHeight() {
+        return size;
+    }
+
+    public void paintIcon(Component c, Graphics g, int x, int y) {
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setColor(playerOne ? Color.WHITE : Color.DARK_GRAY);
+        g2.fillOval(x + size / 8, y + size / 8, size * 3 / 4, size * 3 / 4);
+        g2.setColor(playerOne ? Color.DARK_GRAY : Color.WHITE);
+        g2.setFont(new Font("Arial", Font.BOLD, size / 3));
+        FontMetrics metrics = g2.getFontMetrics();
+        g2.drawString(letter, x + (size - metrics.stringWidth(letter)) / 2,
+                y + (size - metrics.getHeight()) / 2 + metrics.getAscent());
+        g2.dispose();
+    }
+}
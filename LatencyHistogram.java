@@ -0,0 +1,111 @@
+/**
+ * Purpose: count latencies in log-linear buckets, like an HDR histogram
+ * with about 2 significant digits. values below 128 have their own
+ * bucket, larger values share a bucket with values within 1/64 of them.
+ * recording is O(1) and the size is fixed, so it can run for a whole game
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 64;
+    private static final int LINEAR_LIMIT = 128;
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - 7) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long max = 0;
+    private long sum = 0;
+
+    /**
+     * record one value, e.g. nanoseconds. negative values count as 0
+     */
+    public synchronized void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[getBucket(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    private static int getBucket(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // 7 or more
+        int sub = (int) (value >>> (exponent - 6)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - 7) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * highest value that falls in a bucket
+     */
+    private static long getBucketValue(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 7;
+        long sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - 6)) - 1;
+    }
+
+    /**
+     * value at or below which percentile (0 - 100) of the values fall
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(getBucketValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * add the values of other, e.g. to report histograms of many threads
+     */
+    public void add(LatencyHistogram other) {
+        long[] otherCounts;
+        long otherCount, otherMax, otherSum;
+        synchronized (other) {
+            otherCounts = other.counts.clone();
+            otherCount = other.count;
+            otherMax = other.max;
+            otherSum = other.sum;
+        }
+        synchronized (this) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += otherCounts[i];
+            }
+            count += otherCount;
+            sum += otherSum;
+            max = Math.max(max, otherMax);
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    public synchronized void reset() {
+        java.util.Arrays.fill(counts, 0);
+        count = 0;
+        max = 0;
+        sum = 0;
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Part in MVC design pattern: View
+ * Purpose: keep a LatencyHistogram for each step of handling a click
+ * (getMove, move, tiles, highlightCheck, paint and click to paint) so
+ * slow machines can be measured. steps are recorded by the model thread
+ * and the event thread
+ */
+public class LatencyMonitor {
+    public static final String GET_MOVE = "getMove";
+    public static final String MOVE = "move";
+    public static final String TILES = "tiles";
+    public static final String HIGHLIGHT_CHECK = "highlightCheck";
+    public static final String PAINT = "paint";
+    public static final String CLICK_TO_PAINT = "click to paint";
+
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<String, LatencyHistogram>();
+
+    public LatencyMonitor() {
+        for (String step : new String[] { GET_MOVE, MOVE, TILES, HIGHLIGHT_CHECK, PAINT, CLICK_TO_PAINT }) {
+            histograms.put(step, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * record the time a step took in nanoseconds
+     */
+    public void record(String step, long nanos) {
+        histograms.get(step).record(nanos);
+    }
+
+    /**
+     * one line per step: count, p50, p99 and max in milliseconds
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            report.append(String.format("%-15s n=%-6d p50=%.2f p99=%.2f max=%.2f ms%n", entry.getKey(), h.getCount(),
+                    h.getPercentile(50) / 1e6, h.getPercentile(99) / 1e6, h.getMax() / 1e6));
+        }
+        return report.toString();
+    }
+
+    /**
+     * write the report with percentiles p50 to p99.9 to a file
+     */
+    public void export(String fileName) throws IOException {
+        double[] percentiles = { 50, 90, 99, 99.9 };
+        try (PrintWriter out = new PrintWriter(new FileWriter(fileName))) {
+            out.println("step,count,mean_ms,p50_ms,p90_ms,p99_ms,p99.9_ms,max_ms");
+            for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+                LatencyHistogram h = entry.getValue();
+                out.print(entry.getKey() + "," + h.getCount() + "," + h.getMean() / 1e6);
+                for (double p : percentiles) {
+                    out.print("," + h.getPercentile(p) / 1e6);
+                }
+                out.println("," + h.getMax() / 1e6);
+            }
+        }
+    }
+
+    public void reset() {
+        for (LatencyHistogram h : histograms.values()) {
+            h.reset();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.management.ObjectName;
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: count and time the work of Board: move generation, check
+ * detection, win detection, Time/Plus switching and save/load, and count
+ * moves, game results and games hosted by GameServer that are not over.
+ * counters are LongAdders and every timer has a LatencyHistogram per
+ * stripe of threads, so threads rarely share a lock.
+ *
+ * metrics are off unless java is started with -Dtalabia.metrics=true.
+ * ENABLED is a constant, so when it is false the JIT removes the timing
+ * code. when on, the metrics are registered as an MBean, and
+ * -Dtalabia.metrics.dump=<seconds> also prints them at that interval
+ */
+public class ModelMetrics implements ModelMetricsMBean {
+    public static final boolean ENABLED = Boolean.getBoolean("talabia.metrics");
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2;
+
+    public static final Timer GET_LEGAL_MOVE = new Timer("getLegalMove");
+    public static final Timer REFRESH_CHECK = new Timer("refreshPlayerInCheck");
+    public static final Timer CHECK_WIN = new Timer("checkWin");
+    public static final Timer TIME_PLUS_SWITCH = new Timer("TimePlusSwitch"); // switches made by moves only
+    public static final Timer SAVE = new Timer("save");
+    public static final Timer LOAD = new Timer("load");
+    private static final Timer[] TIMERS = { GET_LEGAL_MOVE, REFRESH_CHECK, CHECK_WIN, TIME_PLUS_SWITCH, SAVE, LOAD };
+
+    private static final LongAdder moves = new LongAdder();
+    private static final LongAdder gamesInProgress = new LongAdder();
+    private static final LongAdder[] outcomes = { new LongAdder(), new LongAdder(), new LongAdder() }; // -1, 1, 2
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new ModelMetrics(),
+                        new ObjectName("Talabia:type=ModelMetrics"));
+            } catch (Exception e) {
+                System.out.println(e);
+            }
+            startDump(Long.getLong("talabia.metrics.dump", 0));
+        }
+    }
+
+    /**
+     * start time for Timer.stop, 0 when metrics are off
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public static void countMove() {
+        if (ENABLED) {
+            moves.increment();
+        }
+    }
+
+    /**
+     * a hosted game started or came back from being over (true),
+     * or was won, drawn or closed (false)
+     */
+    public static void countGameInProgress(boolean started) {
+        if (ENABLED) {
+            gamesInProgress.add(started ? 1 : -1);
+        }
+    }
+
+    /**
+     * a game ended with winner 1, 2 or -1 (stalemate)
+     */
+    public static void countOutcome(int winner) {
+        if (ENABLED) {
+            outcomes[winner == -1 ? 0 : winner].increment();
+        }
+    }
+
+    private static void startDump(long seconds) {
+        if (seconds <= 0) {
+            return;
+        }
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Talabia-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        long[] lastMoves = { 0 };
+        dumper.scheduleAtFixedRate(() -> {
+            long total = moves.sum();
+            System.out.printf("%.0f moves/s%n%s", (total - lastMoves[0]) / (double) seconds, createReport());
+            lastMoves[0] = total;
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    static String createReport() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("moves: %d, games in progress: %d, wins: %d / %d, stalemates: %d%n", moves.sum(),
+                gamesInProgress.sum(), outcomes[1].sum(), outcomes[2].sum(), outcomes[0].sum()));
+        for (Timer t : TIMERS) {
+            LatencyHistogram h = t.getHistogram();
+            text.append(String.format("%-21s n=%-10d p50=%.1f p99=%.1f max=%.1f us%n", t.name, h.getCount(),
+                    h.getPercentile(50) / 1e3, h.getPercentile(99) / 1e3, h.getMax() / 1e3));
+        }
+        return text.toString();
+    }
+
+    private static Timer getTimer(String operation) {
+        for (Timer t : TIMERS) {
+            if (t.name.equals(operation)) {
+                return t;
+            }
+        }
+        throw new IllegalArgumentException("unknown operation " + operation);
+    }
+
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    public long getGamesInProgress() {
+        return gamesInProgress.sum();
+    }
+
+    public long getPlayer1Wins() {
+        return outcomes[1].sum();
+    }
+
+    public long getPlayer2Wins() {
+        return outcomes[2].sum();
+    }
+
+    public long getStalemates() {
+        return outcomes[0].sum();
+    }
+
+    public String getReport() {
+        return createReport();
+    }
+
+    public long getCount(String operation) {
+        return getTimer(operation).getHistogram().getCount();
+    }
+
+    public double getPercentileMicros(String operation, double percentile) {
+        return getTimer(operation).getHistogram().getPercentile(percentile) / 1e3;
+    }
+
+    public void reset() {
+        for (Timer t : TIMERS) {
+            for (LatencyHistogram h : t.stripes) {
+                h.reset();
+            }
+        }
+        moves.reset();
+        for (LongAdder a : outcomes) {
+            a.reset();
+        }
+    }
+
+    /**
+     * Purpose: histogram of one operation, striped by thread
+     */
+    public static final class Timer {
+        private final String name;
+        private final LatencyHistogram[] stripes;
+
+        Timer(String name) {
+            this.name = name;
+            stripes = new LatencyHistogram[ENABLED ? STRIPES : 0];
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new LatencyHistogram();
+            }
+        }
+
+        /**
+         * record the time since start (from ModelMetrics.start)
+         */
+        public void stop(long start) {
+            if (ENABLED) {
+                long id = Thread.currentThread().getId();
+                stripes[(int) (id ^ (id >>> 7)) & (stripes.length - 1)].record(System.nanoTime() - start);
+            }
+        }
+
+        LatencyHistogram getHistogram() {
+            LatencyHistogram all = new LatencyHistogram();
+            for (LatencyHistogram h : stripes) {
+                all.add(h);
+            }
+            return all;
+        }
+    }
+}
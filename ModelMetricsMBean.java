@@ -0,0 +1,27 @@
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: what ModelMetrics shows in JMX (e.g. jconsole) under
+ * Talabia:type=ModelMetrics
+ */
+public interface ModelMetricsMBean {
+    public long getMoves();
+
+    public long getGamesInProgress();
+
+    public long getPlayer1Wins();
+
+    public long getPlayer2Wins();
+
+    public long getStalemates();
+
+    public String getReport();
+
+    /**
+     * number of timed calls of an operation, e.g. "checkWin"
+     */
+    public long getCount(String operation);
+
+    public double getPercentileMicros(String operation, double percentile);
+
+    public void reset();
+}
@@ -0,0 +1,125 @@
+import java.util.*;
+
+/**
+ * Part in MVC design pattern: Model
+ * Model's design pattern: Bridge
+ * Part in Bridge design pattern: Implementation
+ *
+ * Purpose: a move generator that MoveFuzzer compares with Board and Piece,
+ * which define the rules. a faster implementation only has to give the
+ * same moves, check and winner as Board for every position
+ */
+public interface MoveBackend {
+    /**
+     * take the position of board, Board is not changed
+     */
+    public void setPosition(Board board);
+
+    /**
+     * moves of the current player, { fromX, fromY, toX, toY }.
+     * a move may still be refused by tryMove
+     */
+    public List<Integer[]> getLegalMoves();
+
+    /**
+     * returns false if the move is refused, the position is then unchanged
+     */
+    public boolean tryMove(int fromX, int fromY, int toX, int toY);
+
+    /**
+     * take back the last move made by tryMove
+     */
+    public void undoMove();
+
+    public int getPlayerInCheck();
+
+    public int getWinner();
+
+    /**
+     * the position in Board notation
+     */
+    public String toNotation();
+}
+
+/**
+ * Part in MVC design pattern: Model
+ * Model's design pattern: Bridge
+ * Part in Bridge design pattern: Concrete implementation
+ * Purpose: a Board as a MoveBackend. setPosition does nothing, so this
+ * is the reference itself; subclasses load their own Board
+ */
+class BoardBackend implements MoveBackend {
+    protected final Board board;
+
+    BoardBackend(Board board) {
+        this.board = board;
+    }
+
+    public void setPosition(Board reference) {
+    }
+
+    public List<Integer[]> getLegalMoves() {
+        return board.getLegalMoves();
+    }
+
+    public boolean tryMove(int fromX, int fromY, int toX, int toY) {
+        return board.tryMove(fromX, fromY, toX, toY);
+    }
+
+    public void undoMove() {
+        board.undoMove();
+    }
+
+    public int getPlayerInCheck() {
+        return board.getPlayerInCheck();
+    }
+
+    public int getWinner() {
+        return board.getWinner();
+    }
+
+    public String toNotation() {
+        return board.toNotation();
+    }
+}
+
+/**
+ * Part in MVC design pattern: Model
+ * Model's design pattern: Bridge
+ * Part in Bridge design pattern: Concrete implementation
+ * Purpose: Board loaded from its compact state (Board.packState), the way
+ * GameServer loads its games
+ */
+class StateBackend extends BoardBackend {
+    private final byte[] state = new byte[Board.STATE_SIZE];
+
+    StateBackend() {
+        super(new Board());
+    }
+
+    @Override
+    public void setPosition(Board reference) {
+        reference.packState(state, 0);
+        board.setState(state, 0);
+    }
+}
+
+/**
+ * Part in MVC design pattern: Model
+ * Model's design pattern: Bridge
+ * Part in Bridge design pattern: Concrete implementation
+ * Purpose: Board loaded from notation, so pieces are listed square by
+ * square instead of in the order of the game. Board finds check in list
+ * order, so this backend can differ from Board in check after a move
+ * (see Board.setNotation); use state to compare everything else
+ */
+class NotationBackend extends BoardBackend {
+    NotationBackend() {
+        super(new Board());
+    }
+
+    @Override
+    public void setPosition(Board reference) {
+        board.setNotation(reference.toNotation());
+    }
+}
@@ -0,0 +1,184 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: play random games with Board and, at every position, compare
+ * it with a MoveBackend: which moves are made and which are refused, and
+ * the check, winner and position after each move. games run in parallel
+ * and game n uses seed + n, so a failing game can be played again.
+ * a mismatch is shrunk by removing pieces while it still happens, and the
+ * smallest position is printed. positions are kept as Board.packState,
+ * which keeps the order of the pieces, as the rules depend on it
+ *
+ * usage: java MoveFuzzer [games] [threads] [state|notation] [seed]
+ */
+public class MoveFuzzer {
+    private static final int MAX_PLIES = TrainingExporter.MAX_PLIES;
+
+    private final String backendName;
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong positions = new AtomicLong();
+    private final AtomicReference<String> failure = new AtomicReference<String>();
+
+    public MoveFuzzer(String backendName) {
+        this.backendName = backendName;
+    }
+
+    static MoveBackend createBackend(String name) {
+        switch (name) {
+            case "state":
+                return new StateBackend();
+            case "notation":
+                return new NotationBackend();
+        }
+        throw new IllegalArgumentException("unknown backend " + name);
+    }
+
+    /**
+     * compare the position of reference with backend.
+     * returns a description of the first difference, or null if none
+     */
+    static String compare(Board reference, MoveBackend backend) {
+        backend.setPosition(reference);
+        if (backend.getPlayerInCheck() != reference.getPlayerInCheck() || backend.getWinner() != reference.getWinner()) {
+            return "position differs: " + backend.toNotation();
+        }
+
+        Map<String, String> expected = getOutcomes(reference.getLegalMoves(), new BoardBackend(reference));
+        Map<String, String> actual = getOutcomes(backend.getLegalMoves(), backend);
+        if (expected.equals(actual)) {
+            return null;
+        }
+
+        Set<String> moves = new TreeSet<String>(expected.keySet());
+        moves.addAll(actual.keySet());
+        for (String move : moves) {
+            if (!Objects.equals(expected.get(move), actual.get(move))) {
+                return "move " + move + ": Board gives " + expected.get(move) + ", backend gives " + actual.get(move);
+            }
+        }
+        return "moves differ";
+    }
+
+    /**
+     * make and take back each move, by move "fxfytxty" the position
+     * after it, or "refused"
+     */
+    private static Map<String, String> getOutcomes(List<Integer[]> moves, MoveBackend board) {
+        Map<String, String> outcomes = new HashMap<String, String>();
+        for (Integer[] m : moves) {
+            String move = "" + m[0] + m[1] + m[2] + m[3];
+            if (board.tryMove(m[0], m[1], m[2], m[3])) {
+                outcomes.put(move, board.toNotation());
+                board.undoMove();
+            } else {
+                outcomes.put(move, "refused");
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * play one game, returns the packed state of the first position that
+     * differs, or null
+     */
+    byte[] playGame(long seed) {
+        Random random = new Random(seed);
+        Board board = new Board();
+        MoveBackend backend = createBackend(backendName);
+
+        for (int ply = 0; ply <= MAX_PLIES && board.getWinner() == 0; ply++) {
+            positions.incrementAndGet();
+            if (compare(board, backend) != null) {
+                byte[] state = new byte[Board.STATE_SIZE];
+                board.packState(state, 0);
+                return state;
+            }
+            if (!TrainingExporter.playRandomMove(board, random)) {
+                break;
+            }
+        }
+        games.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * remove pieces other than the Suns while the mismatch still happens
+     */
+    byte[] shrink(byte[] state) {
+        Board board = new Board();
+        MoveBackend backend = createBackend(backendName);
+        boolean removed = true;
+        while (removed) {
+            removed = false;
+            for (int i = 0; i < 56 && state[i + 1] != 0; i += 2) {
+                int code = state[i + 1];
+                if (code == 6 || code == 12) { // Sun
+                    continue;
+                }
+                byte[] smaller = state.clone();
+                System.arraycopy(state, i + 2, smaller, i, 56 - i - 2); // keep the order of the others
+                smaller[54] = 0;
+                smaller[55] = 0;
+                board.setState(smaller, 0);
+                if (compare(board, backend) != null) {
+                    state = smaller;
+                    removed = true;
+                    break;
+                }
+            }
+        }
+        return state;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long gameCount = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String backendName = args.length > 2 ? args[2] : "state";
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        MoveFuzzer fuzzer = new MoveFuzzer(backendName);
+        AtomicLong next = new AtomicLong();
+        long start = System.nanoTime();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            results.add(workers.submit(() -> {
+                for (long n; fuzzer.failure.get() == null && (n = next.getAndIncrement()) < gameCount;) {
+                    byte[] state = fuzzer.playGame(seed + n);
+                    if (state != null) {
+                        byte[] smallest = fuzzer.shrink(state);
+                        Board board = new Board();
+                        board.setState(smallest, 0);
+                        fuzzer.failure.compareAndSet(null, "game seed " + (seed + n) + "\nposition: "
+                                + board.toNotation() + "\nstate: " + toHex(smallest) + "\n"
+                                + compare(board, createBackend(backendName)));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : results) {
+            f.get();
+        }
+        workers.shutdown();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("backend %s, seed %d: %d games, %d positions, %.1f s%n", backendName, seed,
+                fuzzer.games.get(), fuzzer.positions.get(), seconds);
+        if (fuzzer.failure.get() != null) {
+            System.out.println("MISMATCH\n" + fuzzer.failure.get());
+            System.exit(1);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
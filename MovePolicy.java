@@ -0,0 +1,59 @@
+import java.util.*;
+
+/**
+ * Part in MVC design pattern: Controller
+ * Controller's design pattern: Strategy
+ * Part in Strategy design pattern: Strategy
+ *
+ * Purpose: choose the move a simulated player makes
+ */
+public interface MovePolicy {
+    /**
+     * choose one of moves ({ fromX, fromY, toX, toY }) for the current
+     * player of game. if it is refused it is removed and this is called again
+     */
+    public Integer[] chooseMove(BoardController game, List<Integer[]> moves, Random random);
+}
+
+/**
+ * Part in MVC design pattern: Controller
+ * Controller's design pattern: Strategy
+ * Part in Strategy design pattern: Concrete strategy
+ * Purpose: any move, all equally likely
+ */
+class RandomPolicy implements MovePolicy {
+    public Integer[] chooseMove(BoardController game, List<Integer[]> moves, Random random) {
+        return moves.get(random.nextInt(moves.size()));
+    }
+}
+
+/**
+ * Part in MVC design pattern: Controller
+ * Controller's design pattern: Strategy
+ * Part in Strategy design pattern: Concrete strategy
+ * Purpose: capture the Sun if possible, else a random capture, else a random move
+ */
+class CapturePolicy implements MovePolicy {
+    private final byte[] pieceAt = new byte[42]; // 0 = empty, else 1 + piece, 6 = Sun
+
+    public Integer[] chooseMove(BoardController game, List<Integer[]> moves, Random random) {
+        Arrays.fill(pieceAt, (byte) 0);
+        for (Piece p : game.getBoard()) {
+            if (p.getPlayer() != game.getPlayer()) {
+                pieceAt[p.getY() * 7 + p.getX()] = (byte) (p.getName().equals("Sun") ? 6 : 1);
+            }
+        }
+
+        Integer[] capture = null;
+        int captures = 0;
+        for (Integer[] m : moves) {
+            int target = pieceAt[m[3] * 7 + m[2]];
+            if (target == 6) {
+                return m;
+            } else if (target != 0 && random.nextInt(++captures) == 0) { // each capture equally likely
+                capture = m;
+            }
+        }
+        return capture != null ? capture : moves.get(random.nextInt(moves.size()));
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: fail the build when Board makes or refuses a move it should
+ * not. each case is a position where the player to move is in check, a
+ * move, and whether tryMove must make it. every case is tried with the
+ * pieces in notation order and in the reverse order, as the rules must
+ * not depend on the order of the piece list.
+ * a refused move must leave the position as it was
+ *
+ * usage: java MoveRegression
+ * exits with status 1 if a case fails
+ */
+public class MoveRegression {
+    // position in Board notation, move fromX fromY toX toY, made or refused
+    private static final Object[][] CASES = {
+            // Sun steps along the row of the Plus that checks it
+            { "1S1x3/7/7/7/7/2s4 1 2 1 0 178", "1505", false },
+            // Time steps between the checking Plus and the Sun
+            { "6s/x2S3/7/T6/7/7 1 0 1 0 172", "0224", true },
+            // Hourglass takes the checking Plus
+            { "1S5/2H1s2/7/1x5/7/7 1 2 1 0 134", "2412", true },
+            // Point takes the checking Time
+            { "1D5/1t1s3/7/7/4S2/7 1 0 1 0 168", "1514", true } };
+
+    /**
+     * reverse the order of the pieces of board
+     */
+    static void reversePieces(Board board) {
+        byte[] state = new byte[Board.STATE_SIZE];
+        board.packState(state, 0);
+        int count = 0;
+        while (count < Board.MAX_PIECES && state[count * 2 + 1] != 0) {
+            count++;
+        }
+        byte[] reversed = state.clone();
+        for (int i = 0; i < count; i++) {
+            reversed[i * 2] = state[(count - 1 - i) * 2];
+            reversed[i * 2 + 1] = state[(count - 1 - i) * 2 + 1];
+        }
+        board.setState(reversed, 0);
+    }
+
+    public static void main(String[] args) {
+        Board board = new Board();
+        boolean failed = false;
+
+        for (Object[] c : CASES) {
+            String notation = (String) c[0];
+            String move = (String) c[1];
+            boolean expected = (Boolean) c[2];
+            for (boolean reverse : new boolean[] { false, true }) {
+                board.setNotation(notation);
+                if (reverse) {
+                    reversePieces(board);
+                }
+                String before = board.toNotation();
+                boolean made = board.tryMove(move.charAt(0) - '0', move.charAt(1) - '0', move.charAt(2) - '0',
+                        move.charAt(3) - '0');
+
+                String error = null;
+                if (made != expected) {
+                    error = expected ? "refused" : "made";
+                } else if (!made && !board.toNotation().equals(before)) {
+                    error = "refused but changed the position to " + board.toNotation();
+                }
+                failed |= error != null;
+                System.out.printf("%-34s %s %-8s %-8s %s%n", notation, move, reverse ? "reverse" : "in order",
+                        expected ? "made" : "refused", error == null ? "ok" : "FAILED: " + error);
+            }
+        }
+
+        if (failed) {
+            System.out.println("move regression failed");
+            System.exit(1);
+        }
+    }
+}
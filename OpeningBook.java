@@ -0,0 +1,335 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: moves played in the first BOOK_PLIES plies of a corpus of games,
+ * with how often each was played and how it scored for the player who made
+ * it. every game starts from the same position, so the opening can be read
+ * from the book instead of being worked out again.
+ *
+ * the book is a memory-mapped file of entries sorted by key, so a lookup is
+ * a binary search over the file and reads no objects into the heap.
+ * key = PositionCodec hash of the position with its low 12 bits replaced by
+ * the move (fromX, fromY, toX, toY, 3 bits each), so the moves of a
+ * position are next to each other. a position and its mirror share their
+ * entries: both are stored as the canonical one of Symmetry.
+ * file: "TLB2", number of entries, then ENTRY_SIZE bytes per entry:
+ * key, count, score (2 per win, 1 per draw or unfinished game)
+ *
+ * usage:
+ * java OpeningBook <bookFile> selfplay <games> [threads] [random|capture] [seed]
+ * java OpeningBook <bookFile> replay <gamesFile>
+ * (games file as for TrainingExporter)
+ */
+public class OpeningBook {
+    public static final int BOOK_PLIES = 20;
+    static final int MAGIC = 0x544C4232; // "TLB2", positions in Symmetry canonical form
+    static final int HEADER_SIZE = 8;
+    static final int ENTRY_SIZE = 16;
+    private static final long MOVE_BITS = 0xFFF;
+
+    private final ByteBuffer entries;
+    private final int size;
+
+    private OpeningBook(ByteBuffer entries, int size) {
+        this.entries = entries;
+        this.size = size;
+    }
+
+    public static OpeningBook open(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int size = buffer.getInt(4);
+            if (buffer.getInt(0) != MAGIC || channel.size() != HEADER_SIZE + (long) size * ENTRY_SIZE) {
+                throw new IOException(fileName + " is not an opening book");
+            }
+            buffer.position(HEADER_SIZE);
+            return new OpeningBook(buffer.slice(), size);
+        }
+    }
+
+    /**
+     * number of entries (position and move) in the book
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * pack board into record (PositionCodec.RECORD_SIZE bytes) in the
+     * canonical form of Symmetry. returns true if it was mirrored
+     */
+    static boolean pack(Board board, byte[] record) {
+        PositionCodec.pack(board, 0, record, 0);
+        return Symmetry.canonicalize(record, 0);
+    }
+
+    /**
+     * hash of the canonical position of board, as used by find
+     */
+    public static long hash(Board board, byte[] record) {
+        pack(board, record);
+        return PositionCodec.hash(record, 0);
+    }
+
+    /**
+     * move as stored in the book: fromX, fromY, toX, toY in 3 bits each
+     */
+    public static int encodeMove(int fromX, int fromY, int toX, int toY) {
+        return fromX << 9 | fromY << 6 | toX << 3 | toY;
+    }
+
+    static long getKey(long hash, int move) {
+        return (hash & ~MOVE_BITS) | move;
+    }
+
+    /**
+     * first entry of the position with hash (of a canonical position, see
+     * hash), -1 if it is not in the book.
+     * its moves are the entries from there while isPosition is true
+     */
+    public int find(long hash) {
+        long first = hash & ~MOVE_BITS;
+        int low = 0;
+        int high = size;
+        while (low < high) { // first entry with key >= first
+            int middle = (low + high) >>> 1;
+            if (getKey(middle) < first) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return isPosition(low, hash) ? low : -1;
+    }
+
+    public boolean isPosition(int entry, long hash) {
+        return entry >= 0 && entry < size && (getKey(entry) & ~MOVE_BITS) == (hash & ~MOVE_BITS);
+    }
+
+    private long getKey(int entry) {
+        return entries.getLong(entry * ENTRY_SIZE);
+    }
+
+    public int getMove(int entry) {
+        return (int) (getKey(entry) & MOVE_BITS);
+    }
+
+    public int getCount(int entry) {
+        return entries.getInt(entry * ENTRY_SIZE + 8);
+    }
+
+    /**
+     * 2 per win and 1 per draw for the player who made the move
+     */
+    public int getScore(int entry) {
+        return entries.getInt(entry * ENTRY_SIZE + 12);
+    }
+
+    /**
+     * most played move of the position with hash (the better scoring one
+     * of moves played as often), -1 if the position is not in the book
+     */
+    public int getBookMove(long hash) {
+        int best = -1;
+        for (int entry = find(hash); isPosition(entry, hash); entry++) {
+            if (best < 0 || getCount(entry) > getCount(best)
+                    || getCount(entry) == getCount(best) && getScore(entry) > getScore(best)) {
+                best = entry;
+            }
+        }
+        return best < 0 ? -1 : getMove(best);
+    }
+
+    /**
+     * the book move of board as { fromX, fromY, toX, toY }, null if none
+     */
+    public Integer[] getBookMove(Board board, byte[] record) {
+        boolean mirrored = pack(board, record);
+        int move = getBookMove(PositionCodec.hash(record, 0));
+        if (move < 0) {
+            return null;
+        } else if (mirrored) {
+            move = Symmetry.mirrorMove(move);
+        }
+        Integer[] m = { move >> 9 & 7, move >> 6 & 7, move >> 3 & 7, move & 7 };
+        return m;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("usage: java OpeningBook <bookFile> selfplay <games> [threads] [random|capture] [seed]");
+            System.out.println("       java OpeningBook <bookFile> replay <gamesFile>");
+            return;
+        }
+        BookBuilder builder = new BookBuilder();
+        long start = System.nanoTime();
+
+        if (args[1].equals("selfplay")) {
+            long gameCount = Long.parseLong(args[2]);
+            int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            String policyName = args.length > 4 ? args[4] : "random";
+            long seed = args.length > 5 ? Long.parseLong(args[5]) : System.nanoTime();
+            AtomicLong next = new AtomicLong();
+
+            ExecutorService workers = Executors.newFixedThreadPool(threads);
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                Random random = new Random(seed + t);
+                results.add(workers.submit(() -> {
+                    BoardAdapter game = new BoardAdapter();
+                    MovePolicy policy = GameSimulator.createPolicy(policyName);
+                    while (next.getAndIncrement() < gameCount) {
+                        builder.addSelfPlayGame(game, policy, random);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : results) {
+                f.get();
+            }
+            workers.shutdown();
+        } else {
+            ThreadLocal<Board> boards = ThreadLocal.withInitial(Board::new);
+            try (Stream<String> lines = Files.lines(Paths.get(args[2]))) {
+                lines.parallel().filter(line -> !line.isBlank())
+                        .forEach(line -> builder.addRecordedGame(boards.get(), line));
+            }
+        }
+
+        int entries = builder.write(Paths.get(args[0]));
+        System.out.printf("%d games, %d entries, %.1f s%n", builder.getGames(), entries,
+                (System.nanoTime() - start) / 1e9);
+    }
+}
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: add up the moves of the opening of many games and write them
+ * as an OpeningBook file
+ */
+class BookBuilder {
+    private final Map<Long, int[]> moves = new HashMap<Long, int[]>(); // key to { count, score }
+    private final AtomicLong games = new AtomicLong();
+
+    long getGames() {
+        return games.get();
+    }
+
+    /**
+     * play a game from the start position with policy for both players
+     */
+    void addSelfPlayGame(BoardAdapter game, MovePolicy policy, Random random) {
+        game.resetGame();
+        Board board = game.board;
+        byte[] record = new byte[PositionCodec.RECORD_SIZE];
+        long[] keys = new long[OpeningBook.BOOK_PLIES];
+        int plies = 0;
+
+        while (board.getWinner() == 0 && plies < TrainingExporter.MAX_PLIES) {
+            List<Integer[]> legal = game.getLegalMoves();
+            boolean mirrored = OpeningBook.pack(board, record);
+            long hash = PositionCodec.hash(record, 0);
+            boolean moved = false;
+            while (!legal.isEmpty()) {
+                Integer[] m = policy.chooseMove(game, legal, random);
+                if (game.tryMove(m[0], m[1], m[2], m[3])) {
+                    if (plies < keys.length) {
+                        keys[plies] = getKey(hash, mirrored, m[0], m[1], m[2], m[3]);
+                    }
+                    moved = true;
+                    break;
+                }
+                legal.remove(m); // refused, Sun would be in check
+            }
+            if (!moved) {
+                break;
+            }
+            plies++;
+        }
+        add(keys, Math.min(plies, keys.length), board.getWinner());
+    }
+
+    /**
+     * replay a recorded game, moves as 4 digits fromX fromY toX toY
+     */
+    void addRecordedGame(Board board, String line) {
+        board.setBoard();
+        byte[] record = new byte[PositionCodec.RECORD_SIZE];
+        long[] keys = new long[OpeningBook.BOOK_PLIES];
+        int plies = 0;
+
+        for (String move : line.trim().split("\\s+")) {
+            if (move.length() != 4 || plies == TrainingExporter.MAX_PLIES) {
+                break;
+            }
+            int fromX = move.charAt(0) - '0';
+            int fromY = move.charAt(1) - '0';
+            int toX = move.charAt(2) - '0';
+            int toY = move.charAt(3) - '0';
+            boolean mirrored = OpeningBook.pack(board, record);
+            long hash = PositionCodec.hash(record, 0);
+            if (!board.tryMove(fromX, fromY, toX, toY)) {
+                throw new IllegalArgumentException("illegal move " + move + " in game: " + line);
+            }
+            if (plies < keys.length) {
+                keys[plies] = getKey(hash, mirrored, fromX, fromY, toX, toY);
+            }
+            plies++;
+        }
+        add(keys, Math.min(plies, keys.length), board.getWinner());
+    }
+
+    /**
+     * key of a move from a position with hash, mirrored with the position
+     */
+    private static long getKey(long hash, boolean mirrored, int fromX, int fromY, int toX, int toY) {
+        int move = OpeningBook.encodeMove(fromX, fromY, toX, toY);
+        return OpeningBook.getKey(hash, mirrored ? Symmetry.mirrorMove(move) : move);
+    }
+
+    /**
+     * add the moves of one game. player 1 makes the even plies
+     */
+    private synchronized void add(long[] keys, int count, int winner) {
+        for (int ply = 0; ply < count; ply++) {
+            int player = ply % 2 + 1;
+            int[] stats = moves.computeIfAbsent(keys[ply], k -> new int[2]);
+            stats[0]++;
+            stats[1] += winner == player ? 2 : winner == 3 - player ? 0 : 1;
+        }
+        games.incrementAndGet();
+    }
+
+    /**
+     * write the book sorted by key, returns the number of entries
+     */
+    synchronized int write(Path file) throws IOException {
+        long[] keys = new long[moves.size()];
+        int i = 0;
+        for (long k : moves.keySet()) {
+            keys[i++] = k;
+        }
+        Arrays.sort(keys);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file),
+                1 << 16))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(keys.length);
+            for (long k : keys) {
+                int[] stats = moves.get(k);
+                out.writeLong(k);
+                out.writeInt(stats[0]);
+                out.writeInt(stats[1]);
+            }
+        }
+        return keys.length;
+    }
+}
@@ -1,5 +1,11 @@
+import java.util.Arrays;
+import java.util.List;
+
 public class Player {
     public static void main(String[] args) {
-        new BoardView();
+        // "java Player canvas" draws the board in one component instead of buttons
+        // "java Player latency" shows the time from a click to the board being painted
+        List<String> options = Arrays.asList(args);
+        new BoardView(options.contains("canvas"), options.contains("latency"));
     }
 }
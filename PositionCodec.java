@@ -0,0 +1,93 @@
+import java.util.*;
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: pack a position into a fixed width binary record and hash it.
+ * 
+ * record format (RECORD_SIZE bytes):
+ * [0..20] = 42 squares, 4 bits each, square (x, y) is nibble y * 7 + x
+ * (low nibble first). 0 = empty, 1 = Point up, 2 = Point down,
+ * 3 = Hourglass, 4 = Time, 5 = Plus, 6 = Sun, +6 for player 2 pieces
+ * [21] = bit 0: current player - 1, bits 1-2: turn, bits 3-4: player in check
+ * [22] = result: 0 = unfinished, 1 or 2 = winner, 3 = stalemate (draw)
+ * [23] = total turn, capped at 255
+ */
+public class PositionCodec {
+    public static final int RECORD_SIZE = 24;
+    public static final int POSITION_SIZE = 22; // bytes that identify a position
+
+    private PositionCodec() {
+    }
+
+    /**
+     * square code of a piece, see class comment
+     */
+    public static int squareCode(Piece p) {
+        int code;
+        switch (p.getName()) {
+            case "Point":
+                code = p.getDirection().equals("up") ? 1 : 2;
+                break;
+            case "Hourglass":
+                code = 3;
+                break;
+            case "Time":
+                code = 4;
+                break;
+            case "Plus":
+                code = 5;
+                break;
+            default:
+                code = 6;
+                break;
+        }
+        return p.getPlayer() == 1 ? code : code + 6;
+    }
+
+    /**
+     * write the position of the board to record at offset.
+     * result is the game's winner (-1 for stalemate) or 0 if unknown
+     */
+    public static void pack(Board board, int result, byte[] record, int offset) {
+        Arrays.fill(record, offset, offset + RECORD_SIZE, (byte) 0);
+        for (Piece p : board.getBoard()) {
+            int square = p.getY() * 7 + p.getX();
+            record[offset + (square >> 1)] |= squareCode(p) << ((square & 1) << 2);
+        }
+        record[offset + 21] = (byte) ((board.getPlayer() - 1) | (board.getTurn() << 1)
+                | (board.getPlayerInCheck() << 3));
+        record[offset + 22] = (byte) (result == -1 ? 3 : result);
+        record[offset + 23] = (byte) Math.min(board.getSumTurn(), 255);
+    }
+
+    /**
+     * get the square code of (posX, posY) from a record
+     */
+    public static int getSquare(byte[] record, int offset, int posX, int posY) {
+        int square = posY * 7 + posX;
+        return (record[offset + (square >> 1)] >> ((square & 1) << 2)) & 0xF;
+    }
+
+    /**
+     * 64 bit hash of the position part of a record (pieces, player, turn, check)
+     */
+    public static long hash(byte[] record, int offset) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < POSITION_SIZE; i++) {
+            h = (h ^ (record[offset + i] & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * finalizer so that similar positions spread over all bits
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
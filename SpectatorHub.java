@@ -0,0 +1,149 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Part in MVC design pattern: View
+ * View's design pattern: Observer
+ * Part in Observer design pattern: Subject
+ *
+ * Purpose: send the updates of one game to many spectators. an update is
+ * encoded once into a frame that is never changed, and the same frame is
+ * put in the bounded queue of every spectator. a spectator whose queue
+ * is full is dropped to resync: its queue is skipped until it catches up,
+ * then it is sent the newest frame. frames hold the whole position, so
+ * the newest frame is a snapshot, and a slow spectator never makes the
+ * game wait
+ */
+public class SpectatorHub {
+    private final List<Spectator> spectators = new CopyOnWriteArrayList<Spectator>();
+    private final AtomicLong drops = new AtomicLong();
+    private volatile byte[] latest;
+    private volatile boolean closed = false;
+
+    /**
+     * first is the frame sent to spectators that join before any update
+     */
+    public SpectatorHub(byte[] first) {
+        latest = first;
+    }
+
+    /**
+     * add a spectator with room for capacity frames.
+     * wake is called on the publishing thread when frames are waiting,
+     * and is expected to make the spectator's thread call drain
+     */
+    public Spectator subscribe(int capacity, Runnable wake) {
+        Spectator s = new Spectator(this, capacity, wake);
+        spectators.add(s);
+        s.resync(); // starts with a snapshot
+        return s;
+    }
+
+    public void unsubscribe(Spectator s) {
+        spectators.remove(s);
+    }
+
+    /**
+     * send a frame to every spectator. the frame must not be changed afterwards
+     */
+    public void publish(byte[] frame) {
+        latest = frame;
+        for (Spectator s : spectators) {
+            s.offer(frame);
+        }
+    }
+
+    /**
+     * newest frame, sent to spectators that resync
+     */
+    public byte[] getLatest() {
+        return latest;
+    }
+
+    /**
+     * publish a last frame and stop, spectators see isClosed after it
+     */
+    public void close(byte[] last) {
+        closed = true;
+        publish(last);
+        spectators.clear();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getSpectatorCount() {
+        return spectators.size();
+    }
+
+    /**
+     * number of times a spectator was dropped to resync
+     */
+    public long getDropCount() {
+        return drops.get();
+    }
+
+    void countDrop() {
+        drops.incrementAndGet();
+    }
+}
+
+/**
+ * Part in MVC design pattern: View
+ * View's design pattern: Observer
+ * Part in Observer design pattern: Observer
+ * Purpose: the queue of one spectator of a SpectatorHub. frames are
+ * added by the game's thread and taken by the spectator's thread.
+ * after a resync the newest frame may be sent twice
+ */
+class Spectator {
+    private final SpectatorHub hub;
+    private final ArrayBlockingQueue<byte[]> frames;
+    private final Runnable wake;
+    private final AtomicBoolean needsResync = new AtomicBoolean(false);
+    private final AtomicBoolean woken = new AtomicBoolean(false);
+
+    Spectator(SpectatorHub hub, int capacity, Runnable wake) {
+        this.hub = hub;
+        this.frames = new ArrayBlockingQueue<byte[]>(capacity);
+        this.wake = wake;
+    }
+
+    void offer(byte[] frame) {
+        if (!needsResync.get() && !frames.offer(frame)) {
+            needsResync.set(true); // too slow, skip frames until drained
+            hub.countDrop();
+        }
+        if (woken.compareAndSet(false, true)) {
+            wake.run();
+        }
+    }
+
+    void resync() {
+        needsResync.set(true);
+        if (woken.compareAndSet(false, true)) {
+            wake.run();
+        }
+    }
+
+    /**
+     * give waiting frames to send, oldest first, up to max frames.
+     * after a drop the newest frame is given instead of the queue.
+     * returns false if frames are left, so drain should be called again
+     */
+    boolean drain(int max, java.util.function.Consumer<byte[]> send) {
+        woken.set(false); // frames offered from now on wake again
+        int sent = 0;
+        if (needsResync.getAndSet(false)) {
+            frames.clear();
+            send.accept(hub.getLatest());
+            sent++;
+        }
+        for (byte[] frame; sent < max && (frame = frames.poll()) != null; sent++) {
+            send.accept(frame);
+        }
+        return frames.isEmpty() && !needsResync.get();
+    }
+}
@@ -0,0 +1,105 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Part in MVC design pattern: View
+ * Purpose: pack all piece images into one atlas image so the view reads
+ * one file at startup and cuts the pieces out in memory.
+ * the atlas is a grid of 6 columns (IconCache.IMAGE_NAMES) by 2 rows
+ * (player 1, player 2) of equal cells
+ *
+ * usage: java SpriteAtlas (writes ATLAS_PATH from the Images_p1/Images_p2 images)
+ */
+public class SpriteAtlas {
+    public static final String ATLAS_PATH = "Images_atlas.png";
+
+    private SpriteAtlas() {
+    }
+
+    /**
+     * read the atlas and cut out each piece image, keyed by its image path
+     * (see IconCache.getImagePath). if there is no atlas the images are
+     * read one file at a time
+     */
+    public static Map<String, Image> load() {
+        Map<String, Image> images = new HashMap<String, Image>();
+        String[] names = IconCache.IMAGE_NAMES;
+
+        BufferedImage atlas = null;
+        try {
+            File file = new File(ATLAS_PATH);
+            if (file.exists()) {
+                atlas = ImageIO.read(file);
+            }
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+
+        for (int player = 1; player <= 2; player++) {
+            for (int i = 0; i < names.length; i++) {
+                String path = "Images_p" + player + "\\" + names[i] + ".png";
+                if (atlas != null) {
+                    int width = atlas.getWidth() / names.length;
+                    int height = atlas.getHeight() / 2;
+                    images.put(path, atlas.getSubimage(i * width, (player - 1) * height, width, height));
+                } else {
+                    images.put(path, readImage(path));
+                }
+            }
+        }
+        return images;
+    }
+
+    /**
+     * read one image, returns an empty image if the file is missing
+     */
+    private static BufferedImage readImage(String path) {
+        try {
+            File file = new File(path);
+            if (file.exists()) {
+                BufferedImage image = ImageIO.read(file);
+                if (image != null) {
+                    return image;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+        return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * pack the piece images into the atlas, each cell as big as the largest image
+     */
+    public static void main(String[] args) throws IOException {
+        String[] names = IconCache.IMAGE_NAMES;
+        BufferedImage[] images = new BufferedImage[names.length * 2];
+        int width = 1;
+        int height = 1;
+        for (int player = 1; player <= 2; player++) {
+            for (int i = 0; i < names.length; i++) {
+                BufferedImage image = readImage("Images_p" + player + "\\" + names[i] + ".png");
+                images[(player - 1) * names.length + i] = image;
+                width = Math.max(width, image.getWidth());
+                height = Math.max(height, image.getHeight());
+            }
+        }
+
+        BufferedImage atlas = new BufferedImage(width * names.length, height * 2, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlas.createGraphics();
+        for (int i = 0; i < images.length; i++) {
+            int column = i % names.length;
+            int row = i / names.length;
+            g.drawImage(images[i], column * width + (width - images[i].getWidth()) / 2,
+                    row * height + (height - images[i].getHeight()) / 2, null);
+        }
+        g.dispose();
+
+        ImageIO.write(atlas, "png", new File(ATLAS_PATH));
+        System.out.println("wrote " + ATLAS_PATH + " (" + atlas.getWidth() + "x" + atlas.getHeight() + ")");
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: the board and every piece move the same way mirrored left to
+ * right (x to 6 - x), so a position and its mirror have the same moves
+ * (mirrored) and the same result. a store keyed by position can keep only
+ * the canonical one of the two: the one whose squares, read from square 0
+ * up, have the smaller PositionCodec code at the first square they differ.
+ * a move found for the canonical position is mirrored back with mirrorMove.
+ *
+ * the rules are symmetric but Board.checkWin is not quite: it calls a
+ * stalemate from the moves of the pieces in list order, so a position and
+ * its mirror with their pieces in another order can end as a draw in one
+ * and go on in the other. a stored result is the one the engine gave the
+ * canonical position
+ */
+public class Symmetry {
+    private static final int[] MIRROR_SQUARE = new int[42]; // index = y * 7 + x
+
+    static {
+        for (int square = 0; square < 42; square++) {
+            MIRROR_SQUARE[square] = square - square % 7 + 6 - square % 7;
+        }
+    }
+
+    private Symmetry() {
+    }
+
+    public static int mirrorSquare(int square) {
+        return MIRROR_SQUARE[square];
+    }
+
+    /**
+     * mirror a move in OpeningBook encoding (fromX, fromY, toX, toY, 3 bits each)
+     */
+    public static int mirrorMove(int move) {
+        return (6 - (move >> 9 & 7)) << 9 | (move & 0700) | (6 - (move >> 3 & 7)) << 3 | (move & 7);
+    }
+
+    /**
+     * mirror a move { fromX, fromY, toX, toY }
+     */
+    public static Integer[] mirrorMove(Integer[] m) {
+        Integer[] mirrored = { 6 - m[0], m[1], 6 - m[2], m[3] };
+        return mirrored;
+    }
+
+    /**
+     * the 7 squares of row posY of a PositionCodec record, square x in bits
+     * 4x..4x+3. a row always lies in the 4 bytes from its first square
+     */
+    private static int getRow(byte[] record, int offset, int posY) {
+        int square = posY * 7;
+        int i = offset + (square >> 1);
+        int bytes = (record[i] & 0xFF) | (record[i + 1] & 0xFF) << 8 | (record[i + 2] & 0xFF) << 16
+                | (record[i + 3] & 0xFF) << 24;
+        return bytes >>> ((square & 1) << 2) & 0xFFFFFFF;
+    }
+
+    private static void setRow(byte[] record, int offset, int posY, int row) {
+        int square = posY * 7;
+        int i = offset + (square >> 1);
+        int shift = (square & 1) << 2;
+        int mask = 0xFFFFFFF << shift;
+        for (int b = 0; b < 4; b++, i++) {
+            int byteMask = mask >>> (b << 3) & 0xFF;
+            record[i] = (byte) ((record[i] & ~byteMask) | (row << shift >>> (b << 3) & byteMask));
+        }
+    }
+
+    /**
+     * a row read by getRow mirrored: the order of its 7 squares reversed
+     */
+    private static int mirrorRow(int row) {
+        int swapped = Integer.reverseBytes(row); // reverses the bytes, then swap the squares in each byte
+        swapped = (swapped & 0x0F0F0F0F) << 4 | (swapped >>> 4 & 0x0F0F0F0F);
+        return swapped >>> 4;
+    }
+
+    /**
+     * true if the mirror of a PositionCodec record comes before it
+     */
+    static boolean isMirrorSmaller(byte[] record, int offset) {
+        for (int y = 0; y < 6; y++) {
+            int row = getRow(record, offset, y);
+            int mirror = mirrorRow(row);
+            if (row != mirror) {
+                int shift = Integer.numberOfTrailingZeros(row ^ mirror) & ~3; // first square they differ
+                return (mirror >>> shift & 0xF) < (row >>> shift & 0xF);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * turn a PositionCodec record into its canonical form.
+     * returns true if it was mirrored, then its moves must be mirrored too
+     */
+    public static boolean canonicalize(byte[] record, int offset) {
+        if (!isMirrorSmaller(record, offset)) {
+            return false;
+        }
+        for (int y = 0; y < 6; y++) {
+            setRow(record, offset, y, mirrorRow(getRow(record, offset, y)));
+        }
+        return true;
+    }
+
+    /**
+     * mirror a state written by Board.packState, pieces stay in list order
+     */
+    public static void mirrorState(byte[] state, int offset) {
+        for (int i = offset; i < offset + 56 && state[i + 1] != 0; i += 2) {
+            state[i] = (byte) MIRROR_SQUARE[state[i]];
+        }
+    }
+}
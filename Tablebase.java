@@ -0,0 +1,379 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: exact results of endgames with few pieces, read from the files
+ * written by TablebaseGenerator (one file per set of pieces, e.g. P1S1S2.tb
+ * for a player 1 Point against the two Suns). files are memory-mapped, so a
+ * probe is a few array reads and the tables are shared by every process.
+ *
+ * a value is WIN, LOSS or DRAW for the player to move, and for WIN and LOSS
+ * the number of plies to the end of the game with best play.
+ * Time and Plus are one kind of piece with a bit for which one it is, like
+ * the direction bit of Point. pieces of the same kind and player are indexed
+ * in square order; Board can find check in a different order for such
+ * pieces, so a value is exact for the board with its pieces in that order
+ */
+public class Tablebase {
+    public static final int DRAW = 0;
+    public static final int WIN = 1;
+    public static final int LOSS = 2;
+    static final int INVALID = 3; // index is not a position, e.g. two pieces on a square
+
+    private static final TablebaseTable MISSING = new TablebaseTable("");
+
+    private final Path directory;
+    private final Map<Long, TablebaseTable> tables = new ConcurrentHashMap<Long, TablebaseTable>();
+
+    public Tablebase(String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * value of the board for the player to move,
+     * -1 if the game is over or there is no table for its pieces
+     */
+    public int probe(Board board) {
+        byte[] state = new byte[Board.STATE_SIZE];
+        board.packState(state, 0);
+        return probe(state, 0);
+    }
+
+    /**
+     * value of a state written by Board.packState
+     */
+    int probe(byte[] state, int offset) {
+        if (state[offset + 57] != 0) {
+            return -1;
+        }
+        TablebaseTable table = getTable(TablebaseTable.getMaterialKey(state, offset));
+        return table == null ? -1 : table.get(table.getIndex(state, offset));
+    }
+
+    /**
+     * the table for a material key, null if there is no file for it
+     */
+    TablebaseTable getTable(long key) {
+        TablebaseTable table = tables.computeIfAbsent(key, k -> {
+            String signature = TablebaseTable.getSignature(k);
+            Path file = directory.resolve(signature + ".tb");
+            if (signature.isEmpty() || !Files.exists(file)) {
+                return MISSING;
+            }
+            try {
+                TablebaseTable t = new TablebaseTable(signature);
+                t.open(file);
+                return t;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return table == MISSING ? null : table;
+    }
+
+    /**
+     * the move with the best value for the player to move, { fromX, fromY,
+     * toX, toY }: the fastest win, else a draw, else the slowest loss.
+     * null if there is no table for the board
+     */
+    public Integer[] getBestMove(Board board) {
+        byte[] state = new byte[Board.STATE_SIZE];
+        board.packState(state, 0);
+        if (probe(state, 0) < 0) {
+            return null;
+        }
+
+        Board copy = new Board();
+        copy.setState(state, 0);
+        int player = copy.getPlayer();
+        Integer[] best = null;
+        int bestRank = Integer.MIN_VALUE;
+        byte[] child = new byte[Board.STATE_SIZE];
+        for (Integer[] m : copy.getLegalMoves()) {
+            copy.setState(state, 0);
+            if (!copy.tryMove(m[0], m[1], m[2], m[3])) {
+                continue;
+            }
+            int rank;
+            if (copy.getWinner() == player) {
+                rank = rank(WIN, 1);
+            } else if (copy.getWinner() == -1) {
+                rank = rank(DRAW, 0);
+            } else {
+                copy.packState(child, 0);
+                int value = probe(child, 0);
+                int result = value < 0 ? DRAW : getResult(value);
+                // the child is valued for the opponent
+                rank = rank(result == WIN ? LOSS : result == LOSS ? WIN : DRAW, getDistance(value) + 1);
+            }
+            if (rank > bestRank) {
+                bestRank = rank;
+                best = m;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * order of results for the player to move, higher is better
+     */
+    private static int rank(int result, int distance) {
+        if (result == WIN) {
+            return 100000 - distance;
+        }
+        return result == LOSS ? -100000 + distance : 0;
+    }
+
+    /**
+     * WIN, LOSS or DRAW of a value from probe
+     */
+    public static int getResult(int value) {
+        return value & 3;
+    }
+
+    /**
+     * plies to the end of the game of a value from probe,
+     * 0 for a draw. longer distances are stored as 254 or 255
+     */
+    public static int getDistance(int value) {
+        return value >>> 2;
+    }
+}
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: index of the positions with one set of pieces, and the mapped
+ * file of their values.
+ *
+ * pieces are put in groups by kind and player, in the order of GROUPS.
+ * each piece is a slot with its square, times 2 with a bit for the Point
+ * direction (down) or Time/Plus (Plus). index = player to move - 1
+ * + 2 * (player in check + 3 * (turn + phases * slots)), where slots is
+ * the slot values in mixed radix. turn is only kept if there is a Time/Plus.
+ *
+ * file: "TLBT", signature, number of positions, 2 bit results (4 to a
+ * byte), then 1 byte distances
+ */
+class TablebaseTable {
+    static final String[] GROUPS = { "P1", "P2", "T1", "T2", "H1", "H2", "S1", "S2" };
+    private static final int MAGIC = 0x544C4254; // "TLBT"
+
+    final String signature;
+    final long key;
+    final int[] slotGroups;
+    final int[] radix;
+    final int phases;
+    final int size;
+    private ByteBuffer data = null;
+    private int distanceOffset;
+
+    TablebaseTable(String signature) {
+        this.signature = signature;
+        int count = signature.length() / 2;
+        slotGroups = new int[count];
+        radix = new int[count];
+        long k = 0;
+        long positions = 6;
+        boolean timePlus = false;
+        for (int i = 0; i < count; i++) {
+            int group = Arrays.asList(GROUPS).indexOf(signature.substring(i * 2, i * 2 + 2));
+            slotGroups[i] = group;
+            radix[i] = group < 4 ? 84 : 42;
+            timePlus |= group == 2 || group == 3;
+            k += 1L << (group * 4);
+            positions *= radix[i];
+        }
+        phases = timePlus ? 4 : 1;
+        positions *= phases;
+        if (positions > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many positions for " + signature);
+        }
+        key = k;
+        size = (int) positions;
+    }
+
+    /**
+     * group of a PositionCodec square code, the kind times 2 plus player - 1
+     */
+    private static int getGroup(int code) {
+        int player = code > 6 ? 1 : 0;
+        switch ((code - 1) % 6) {
+            case 0:
+            case 1:
+                return player; // Point
+            case 3:
+            case 4:
+                return 2 + player; // Time or Plus
+            case 2:
+                return 4 + player; // Hourglass
+            default:
+                return 6 + player; // Sun
+        }
+    }
+
+    /**
+     * square code of a slot value in a group
+     */
+    private static int getCode(int group, int value) {
+        int player = group & 1;
+        int code;
+        switch (group >> 1) {
+            case 0:
+                code = 1 + (value & 1);
+                break;
+            case 1:
+                code = 4 + (value & 1);
+                break;
+            case 2:
+                code = 3;
+                break;
+            default:
+                code = 6;
+                break;
+        }
+        return code + player * 6;
+    }
+
+    /**
+     * number of pieces in each group, 4 bits per group
+     */
+    static long getMaterialKey(byte[] state, int offset) {
+        long k = 0;
+        for (int i = offset; i < offset + 56 && state[i + 1] != 0; i += 2) {
+            k += 1L << (getGroup(state[i + 1]) * 4);
+        }
+        return k;
+    }
+
+    static String getSignature(long key) {
+        StringBuilder signature = new StringBuilder();
+        for (int group = 0; group < GROUPS.length; group++) {
+            for (long n = (key >> (group * 4)) & 15; n > 0; n--) {
+                signature.append(GROUPS[group]);
+            }
+        }
+        return signature.toString();
+    }
+
+    /**
+     * index of a state written by Board.packState with this table's pieces
+     */
+    int getIndex(byte[] state, int offset) {
+        int[] values = new int[slotGroups.length]; // group << 8 | slot value, in slot order
+        int filled = 0;
+        for (int i = offset; i < offset + 56 && state[i + 1] != 0; i += 2) {
+            int code = state[i + 1];
+            int group = getGroup(code);
+            int value = group << 8 | (group < 4 ? state[i] * 2 + ((code - 1) % 3 == 1 ? 1 : 0) : state[i]);
+            int slot = filled++;
+            while (slot > 0 && values[slot - 1] > value) {
+                values[slot] = values[slot - 1];
+                slot--;
+            }
+            values[slot] = value;
+        }
+
+        long slots = 0;
+        for (int i = slotGroups.length - 1; i >= 0; i--) {
+            slots = slots * radix[i] + (values[i] & 255);
+        }
+        int info = state[offset + 56];
+        int turn = phases == 1 ? 0 : (info >> 1) & 3;
+        return (int) ((info & 1) + 2 * (((info >> 3) & 3) + 3 * (turn + phases * slots)));
+    }
+
+    /**
+     * the smaller of the index of state and the index of its mirror,
+     * the one of the two positions that TablebaseGenerator solves
+     */
+    int getCanonicalIndex(byte[] state, int offset) {
+        int index = getIndex(state, offset);
+        Symmetry.mirrorState(state, offset);
+        int mirror = getIndex(state, offset);
+        Symmetry.mirrorState(state, offset);
+        return Math.min(index, mirror);
+    }
+
+    /**
+     * write the position at index to state for Board.setState.
+     * returns false if index is not a position: two pieces on one square,
+     * or pieces of a group not in square order
+     */
+    boolean decode(int index, byte[] state, int offset) {
+        Arrays.fill(state, offset, offset + Board.STATE_SIZE, (byte) 0);
+        int player = index % 2;
+        int check = index / 2 % 3;
+        int turn = index / 6 % phases;
+        int slots = index / 6 / phases;
+
+        long squares = 0;
+        int last = -1;
+        for (int i = 0; i < slotGroups.length; i++) {
+            int value = slots % radix[i];
+            slots /= radix[i];
+            int square = radix[i] == 84 ? value >> 1 : value;
+            if ((squares & (1L << square)) != 0 || (i > 0 && slotGroups[i - 1] == slotGroups[i] && value <= last)) {
+                return false;
+            }
+            squares |= 1L << square;
+            last = value;
+            state[offset + i * 2] = (byte) square;
+            state[offset + i * 2 + 1] = (byte) getCode(slotGroups[i], value);
+        }
+        state[offset + 56] = (byte) (player | (turn << 1) | (check << 3));
+        return true;
+    }
+
+    /**
+     * write results (WIN, LOSS, DRAW or INVALID) and distances to file
+     */
+    void write(Path file, byte[] results, short[] distances) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file),
+                1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(signature);
+            out.writeInt(size);
+            for (int i = 0; i < size; i += 4) {
+                int packed = 0;
+                for (int j = 0; j < 4 && i + j < size; j++) {
+                    packed |= results[i + j] << (j * 2);
+                }
+                out.write(packed);
+            }
+            for (int i = 0; i < size; i++) {
+                // wins are odd and losses even, keep that when cutting long ones
+                out.write(Math.min(distances[i], results[i] == Tablebase.LOSS ? 254 : 255));
+            }
+        }
+    }
+
+    void open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int headerSize = 4 + 2 + signature.length() + 4;
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(headerSize - 4) != size) {
+                throw new IOException(file + " is not a table for " + signature);
+            }
+            distanceOffset = headerSize + (size + 3) / 4;
+            buffer.position(headerSize);
+            data = buffer.slice();
+            distanceOffset -= headerSize;
+        }
+    }
+
+    /**
+     * value at index: result | distance << 2, -1 if index is not a position
+     */
+    int get(int index) {
+        int result = (data.get(index >> 2) >> ((index & 3) * 2)) & 3;
+        if (result == Tablebase.INVALID) {
+            return -1;
+        }
+        return result | (data.get(distanceOffset + index) & 0xFF) << 2;
+    }
+}
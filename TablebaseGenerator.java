@@ -0,0 +1,329 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: solve every position with up to a given number of pieces and
+ * write the results for Tablebase, smaller sets of pieces first so captures
+ * can be looked up.
+ *
+ * moves are made by Board, so the tables follow its rules exactly, check
+ * flag and all. for each set of pieces the generator
+ * 1. makes every move of every position and keeps the index of the
+ *    position after it (captures, wins and stalemates are looked up at once)
+ * 2. goes backwards from the end of the game one ply at a time: in odd
+ *    passes a position is a WIN if a move reaches a LOSS of the last pass,
+ *    in even passes a LOSS if every move reaches a WIN. what is left is a DRAW
+ * a position and its mirror (see Symmetry) have the same value, so only
+ * the one with the smaller index is solved and the other is copied from it.
+ * both steps are split into chunks of positions run on a thread pool.
+ * moves are kept in memory, so 4 pieces only fit without Time/Plus
+ *
+ * usage: java TablebaseGenerator [pieces] [threads] [directory]
+ */
+public class TablebaseGenerator {
+    private static final int CHUNK = 1 << 14;
+
+    private final Path directory;
+    private final Tablebase tablebase;
+    private final ExecutorService workers;
+
+    public TablebaseGenerator(String directory, ExecutorService workers) {
+        this.directory = Paths.get(directory);
+        this.tablebase = new Tablebase(directory);
+        this.workers = workers;
+    }
+
+    /**
+     * sets of pieces with both Suns and pieces - 2 others, smaller first
+     */
+    static List<String> getSignatures(int pieces) {
+        List<String> signatures = new ArrayList<String>();
+        for (int n = 2; n <= pieces; n++) {
+            addSignatures(signatures, "", 0, n - 2);
+        }
+        return signatures;
+    }
+
+    private static void addSignatures(List<String> signatures, String others, int firstGroup, int left) {
+        if (left == 0) {
+            signatures.add(others + "S1S2");
+            return;
+        }
+        for (int group = firstGroup; group < 6; group++) {
+            addSignatures(signatures, others + TablebaseTable.GROUPS[group], group, left - 1);
+        }
+    }
+
+    /**
+     * write the table of signature, unless its file is already there
+     */
+    public void generate(String signature) throws IOException, InterruptedException, ExecutionException {
+        Path file = directory.resolve(signature + ".tb");
+        if (Files.exists(file)) {
+            return;
+        }
+        long start = System.nanoTime();
+        TablebaseTable table = new TablebaseTable(signature);
+        Solver solver = new Solver(table);
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < solver.chunks.length; i++) {
+            int chunk = i;
+            tasks.add(() -> {
+                solver.generateMoves(chunk);
+                return null;
+            });
+        }
+        runAll(tasks);
+        long moves = 0;
+        for (int[] edges : solver.chunkEdges) {
+            moves += edges.length;
+        }
+        double moveSeconds = (System.nanoTime() - start) / 1e9;
+
+        int passes = 0;
+        int quiet = 0;
+        for (int distance = 1; quiet < 2 || distance <= solver.maxExternal.get(); distance++) {
+            int d = distance;
+            AtomicInteger solved = new AtomicInteger();
+            tasks.clear();
+            for (int i = 0; i < solver.chunks.length; i++) {
+                int chunk = i;
+                tasks.add(() -> {
+                    solved.addAndGet(solver.solve(chunk, d));
+                    return null;
+                });
+            }
+            runAll(tasks);
+            quiet = solved.get() == 0 ? quiet + 1 : 0;
+            passes++;
+        }
+        tasks.clear();
+        for (int i = 0; i < solver.chunks.length; i++) {
+            int chunk = i;
+            tasks.add(() -> {
+                solver.copyMirrors(chunk);
+                return null;
+            });
+        }
+        runAll(tasks);
+
+        Files.createDirectories(directory);
+        Path temporary = directory.resolve(signature + ".tb.tmp");
+        table.write(temporary, solver.results, solver.distances);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+
+        int[] counts = new int[4];
+        for (byte r : solver.results) {
+            counts[r]++;
+        }
+        System.out.printf("%-12s %10d positions, win %d, loss %d, draw %d, %d moves in %.1f s, %d passes in %.1f s%n",
+                signature, table.size - counts[Tablebase.INVALID], counts[Tablebase.WIN], counts[Tablebase.LOSS],
+                counts[Tablebase.DRAW], moves, moveSeconds, passes, (System.nanoTime() - start) / 1e9 - moveSeconds);
+    }
+
+    private void runAll(List<Callable<Void>> tasks) throws InterruptedException, ExecutionException {
+        for (Future<Void> f : workers.invokeAll(tasks)) {
+            f.get();
+        }
+    }
+
+    /**
+     * Purpose: moves and results of one table while it is solved
+     */
+    private class Solver {
+        final TablebaseTable table;
+        final int[] chunks; // first index of each chunk
+        final int[][] chunkOffsets; // start of each position's moves in chunkEdges
+        final int[][] chunkEdges; // index after each move that stays in this table
+        final byte[] results;
+        final short[] distances;
+        final short[] externalWin; // fastest win through a capture or win at once, 0 for none
+        final short[] externalLoss; // slowest loss through a capture, 0 for none
+        final byte[] flags;
+        final AtomicInteger maxExternal = new AtomicInteger();
+
+        static final int HAS_MOVES = 1;
+        static final int EXTERNAL_DRAW = 2;
+        static final int SOLVED = 4;
+        static final int MIRRORED = 8;
+
+        Solver(TablebaseTable table) {
+            this.table = table;
+            int count = (table.size + CHUNK - 1) / CHUNK;
+            chunks = new int[count];
+            for (int i = 0; i < count; i++) {
+                chunks[i] = i * CHUNK;
+            }
+            chunkOffsets = new int[count][];
+            chunkEdges = new int[count][];
+            results = new byte[table.size];
+            distances = new short[table.size];
+            externalWin = new short[table.size];
+            externalLoss = new short[table.size];
+            flags = new byte[table.size];
+        }
+
+        /**
+         * make every move of the positions in a chunk
+         */
+        void generateMoves(int chunk) {
+            int first = chunks[chunk];
+            int end = Math.min(first + CHUNK, table.size);
+            Board board = new Board();
+            byte[] state = new byte[Board.STATE_SIZE];
+            byte[] child = new byte[Board.STATE_SIZE];
+            int[] offsets = new int[end - first + 1];
+            int[] edges = new int[CHUNK * 4];
+            int edgeCount = 0;
+            int chunkMax = 0;
+
+            for (int index = first; index < end; index++) {
+                offsets[index - first] = edgeCount;
+                if (!table.decode(index, state, 0)) {
+                    results[index] = Tablebase.INVALID;
+                    flags[index] = SOLVED;
+                    continue;
+                } else if (table.getCanonicalIndex(state, 0) != index) {
+                    flags[index] = SOLVED | MIRRORED; // copied by copyMirrors
+                    continue;
+                }
+                board.setState(state, 0);
+                int player = board.getPlayer();
+                int win = 0;
+                int loss = 0;
+                int flag = 0;
+                for (Integer[] m : board.getLegalMoves()) {
+                    board.setState(state, 0);
+                    if (!board.tryMove(m[0], m[1], m[2], m[3])) {
+                        continue;
+                    }
+                    flag |= HAS_MOVES;
+                    if (board.getWinner() == player) {
+                        win = 1;
+                        continue;
+                    } else if (board.getWinner() != 0) {
+                        flag |= EXTERNAL_DRAW;
+                        continue;
+                    }
+                    board.packState(child, 0);
+                    if (TablebaseTable.getMaterialKey(child, 0) == table.key) {
+                        if (edgeCount == edges.length) {
+                            edges = Arrays.copyOf(edges, edges.length * 2);
+                        }
+                        edges[edgeCount++] = table.getCanonicalIndex(child, 0);
+                        continue;
+                    }
+
+                    int value = tablebase.probe(child, 0); // capture, valued for the opponent
+                    int result = value < 0 ? Tablebase.DRAW : Tablebase.getResult(value);
+                    int distance = Tablebase.getDistance(value) + 1;
+                    if (result == Tablebase.LOSS) {
+                        win = win == 0 ? distance : Math.min(win, distance);
+                    } else if (result == Tablebase.WIN) {
+                        loss = Math.max(loss, distance);
+                    } else {
+                        flag |= EXTERNAL_DRAW;
+                    }
+                }
+                externalWin[index] = (short) win;
+                externalLoss[index] = (short) loss;
+                flags[index] = (byte) flag;
+                chunkMax = Math.max(chunkMax, Math.max(win, loss));
+                if ((flag & HAS_MOVES) == 0) { // no move can be made, the game cannot go on
+                    flags[index] |= SOLVED;
+                }
+            }
+            offsets[end - first] = edgeCount;
+            chunkOffsets[chunk] = offsets;
+            chunkEdges[chunk] = Arrays.copyOf(edges, edgeCount);
+            maxExternal.accumulateAndGet(chunkMax, Math::max);
+        }
+
+        /**
+         * solve the positions of a chunk that end the game in distance plies.
+         * odd passes only write WINs and read LOSSes, even passes the other
+         * way round, so chunks can run at the same time
+         */
+        int solve(int chunk, int distance) {
+            int first = chunks[chunk];
+            int[] offsets = chunkOffsets[chunk];
+            int[] edges = chunkEdges[chunk];
+            int solved = 0;
+            boolean odd = (distance & 1) == 1;
+
+            for (int i = 0; i < offsets.length - 1; i++) {
+                int index = first + i;
+                if ((flags[index] & SOLVED) != 0) {
+                    continue;
+                }
+                if (odd) {
+                    boolean win = externalWin[index] == distance;
+                    for (int e = offsets[i]; e < offsets[i + 1] && !win; e++) {
+                        int c = edges[e];
+                        win = results[c] == Tablebase.LOSS && distances[c] == distance - 1;
+                    }
+                    if (win) {
+                        setResult(index, Tablebase.WIN, distance);
+                        solved++;
+                    }
+                } else if ((flags[index] & EXTERNAL_DRAW) == 0 && externalWin[index] == 0) {
+                    int longest = externalLoss[index];
+                    boolean loss = true;
+                    for (int e = offsets[i]; e < offsets[i + 1] && loss; e++) {
+                        int c = edges[e];
+                        loss = results[c] == Tablebase.WIN;
+                        longest = Math.max(longest, distances[c] + 1);
+                    }
+                    if (loss && longest == distance) {
+                        setResult(index, Tablebase.LOSS, distance);
+                        solved++;
+                    }
+                }
+            }
+            return solved;
+        }
+
+        /**
+         * copy the value of each mirrored position of a chunk from its mirror
+         */
+        void copyMirrors(int chunk) {
+            int end = Math.min(chunks[chunk] + CHUNK, table.size);
+            byte[] state = new byte[Board.STATE_SIZE];
+            for (int index = chunks[chunk]; index < end; index++) {
+                if ((flags[index] & MIRRORED) != 0) {
+                    table.decode(index, state, 0);
+                    int mirror = table.getCanonicalIndex(state, 0);
+                    results[index] = results[mirror];
+                    distances[index] = distances[mirror];
+                }
+            }
+        }
+
+        private void setResult(int index, int result, int distance) {
+            distances[index] = (short) distance;
+            results[index] = (byte) result;
+            flags[index] |= SOLVED;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pieces = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String directory = args.length > 2 ? args[2] : "tablebase";
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            TablebaseGenerator generator = new TablebaseGenerator(directory, workers);
+            for (String signature : getSignatures(pieces)) {
+                generator.generate(signature);
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+}
@@ -25,6 +25,8 @@ public interface TilePrototype {
 
     public void setImage(String pieceImagePath);
 
+    public void setIcon(Icon icon);
+
     public ActionListener getActionListener();
 }
 
@@ -106,6 +108,13 @@ class Tile implements TilePrototype {
         button.setIcon(new ImageIcon(pieceImagePath)); // e.g. "Images_p1\\Point_up.png"
     }
 
+    /**
+     * set image of button to an already decoded icon
+     */
+    public void setIcon(Icon icon) {
+        button.setIcon(icon);
+    }
+
     /**
      * returns shallow copy the button.
      * only actionListener is passed to copy as coordinates vary
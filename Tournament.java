@@ -0,0 +1,265 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Part in MVC design pattern: Controller
+ * Controller's design pattern: Adapter
+ * Part in Adapter design pattern: Client
+ *
+ * Purpose: find out if move policy a is stronger than policy b.
+ * each pair of games starts from the same random opening with the
+ * colours swapped, so an unfair opening counts for both. games run on
+ * a pool with one thread per processor. a policy that takes longer
+ * than the move budget for a move loses the game on time. after each
+ * pair a sequential probability ratio test decides between elo0 (not
+ * stronger) and elo1 (stronger) and stops the tournament early.
+ * the two games of a pair share their opening, so they are not
+ * independent: the test scores whole pairs (0, 1/2, 1, 3/2 or 2 points,
+ * the pentanomial model) and waits for MIN_PAIRS pairs before it decides
+ *
+ * usage: java Tournament <policy a> <policy b> [max games] [threads]
+ *        [move budget ms] [elo0] [elo1] [seed]
+ */
+public class Tournament {
+    private static final int OPENING_PLIES = 4;
+    private static final double ALPHA = 0.05; // chance to accept elo1 when elo0 is true
+    private static final double BETA = 0.05; // chance to accept elo0 when elo1 is true
+    private static final int MIN_PAIRS = 25; // fewer give too rough a variance to stop on
+
+    private final String policyA;
+    private final String policyB;
+    private final long budgetNanos;
+    private final double elo0;
+    private final double elo1;
+
+    // results for policy a, changed only while holding this
+    private int wins = 0;
+    private int draws = 0;
+    private int losses = 0;
+    private int timeLosses = 0;
+    private int[] pairs = new int[5]; // number of pairs by points of policy a, in half points
+    private volatile String decision = null;
+
+    public Tournament(String policyA, String policyB, long budgetMillis, double elo0, double elo1) {
+        this.policyA = policyA;
+        this.policyB = policyB;
+        this.budgetNanos = budgetMillis * 1000000;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+    }
+
+    /**
+     * play both games of one opening, then test if the tournament can stop
+     */
+    void playPair(BoardController game, MovePolicy a, MovePolicy b, long seed) {
+        List<Integer[]> opening = createOpening(game, new Random(seed));
+        double first = playGame(game, opening, a, b, new Random(seed + 1));
+        double second = 1 - playGame(game, opening, b, a, new Random(seed + 2));
+
+        synchronized (this) {
+            pairs[(int) Math.round((first + second) * 2)]++;
+            for (double score : new double[] { first, second }) {
+                if (score == 1) {
+                    wins++;
+                } else if (score == 0) {
+                    losses++;
+                } else {
+                    draws++;
+                }
+            }
+            double llr = getLogLikelihoodRatio();
+            if (getPairs() < MIN_PAIRS) {
+                return;
+            } else if (decision == null && llr >= Math.log((1 - BETA) / ALPHA)) {
+                decision = "H1 accepted: " + policyA + " is at least " + elo1 + " Elo stronger";
+            } else if (decision == null && llr <= Math.log(BETA / (1 - ALPHA))) {
+                decision = "H0 accepted: " + policyA + " is not " + elo1 + " Elo stronger";
+            }
+        }
+    }
+
+    /**
+     * random moves from the start position, made again until the game is not over
+     */
+    private static List<Integer[]> createOpening(BoardController game, Random random) {
+        List<Integer[]> opening = new ArrayList<Integer[]>();
+        while (opening.size() < OPENING_PLIES) {
+            game.resetGame();
+            opening.clear();
+            while (opening.size() < OPENING_PLIES && game.getWinner() == 0) {
+                List<Integer[]> moves = game.getLegalMoves();
+                Collections.shuffle(moves, random);
+                Integer[] made = null;
+                for (Integer[] m : moves) {
+                    if (game.tryMove(m[0], m[1], m[2], m[3])) {
+                        made = m;
+                        break;
+                    }
+                }
+                if (made == null || game.getWinner() != 0) {
+                    break; // over already, try another opening
+                }
+                opening.add(made);
+            }
+        }
+        return opening;
+    }
+
+    /**
+     * play the opening, then first as the player to move and second as the
+     * other player. returns the score of first: 1 win, 0.5 draw, 0 loss
+     */
+    private double playGame(BoardController game, List<Integer[]> opening, MovePolicy first, MovePolicy second,
+            Random random) {
+        game.resetGame();
+        for (Integer[] m : opening) {
+            game.tryMove(m[0], m[1], m[2], m[3]);
+        }
+        int firstPlayer = game.getPlayer();
+
+        while (game.getWinner() == 0 && game.getTotalTurn() < TrainingExporter.MAX_PLIES) {
+            boolean firstToMove = game.getPlayer() == firstPlayer;
+            MovePolicy policy = firstToMove ? first : second;
+            List<Integer[]> moves = game.getLegalMoves();
+            long start = System.nanoTime();
+            boolean moved = false;
+
+            while (!moves.isEmpty()) {
+                Integer[] m = policy.chooseMove(game, moves, random);
+                if (game.tryMove(m[0], m[1], m[2], m[3])) {
+                    moved = true;
+                    break;
+                }
+                moves.remove(m);
+            }
+
+            if (System.nanoTime() - start > budgetNanos) {
+                synchronized (this) {
+                    timeLosses++;
+                }
+                return firstToMove ? 0 : 1;
+            }
+            if (!moved) {
+                return 0.5; // no move can be made
+            }
+        }
+
+        int winner = game.getWinner();
+        if (winner == firstPlayer) {
+            return 1;
+        }
+        return winner > 0 ? 0 : 0.5; // stalemate or too long
+    }
+
+    private int getPairs() {
+        int n = 0;
+        for (int count : pairs) {
+            n += count;
+        }
+        return n;
+    }
+
+    /**
+     * score of policy a per game
+     */
+    private double getScore() {
+        int n = getPairs();
+        double points = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            points += pairs[i] * i / 4.0;
+        }
+        return n == 0 ? 0.5 : points / n;
+    }
+
+    /**
+     * variance of one pair's score per game (points / 2)
+     */
+    private double getVariance() {
+        int n = getPairs();
+        double s = getScore();
+        double sum = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            sum += pairs[i] * (i / 4.0 - s) * (i / 4.0 - s);
+        }
+        return n == 0 ? 0 : sum / n;
+    }
+
+    /**
+     * log likelihood ratio of elo1 against elo0, using the normal
+     * approximation of the distribution of pair scores
+     */
+    private double getLogLikelihoodRatio() {
+        double variance = getVariance();
+        if (variance == 0) {
+            return 0; // all pairs alike, wait for more
+        }
+        double s0 = getExpectedScore(elo0);
+        double s1 = getExpectedScore(elo1);
+        return getPairs() * (s1 - s0) * (2 * getScore() - s0 - s1) / (2 * variance);
+    }
+
+    static double getExpectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    static double getElo(double score) {
+        score = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    public synchronized String report() {
+        int games = wins + draws + losses;
+        double score = getScore();
+        double margin = 1.96 * Math.sqrt(getVariance() / Math.max(getPairs(), 1)); // 95% of score
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%s vs %s: %d games, +%d =%d -%d, %d lost on time%n", policyA, policyB, games,
+                wins, draws, losses, timeLosses));
+        text.append(String.format("pairs by points 0, 1/2, 1, 3/2, 2: %s%n", Arrays.toString(pairs)));
+        text.append(String.format("score %.3f, Elo %.1f (95%%: %.1f to %.1f)%n", score, getElo(score),
+                getElo(score - margin), getElo(score + margin)));
+        text.append(String.format("SPRT elo0=%.1f elo1=%.1f: LLR %.2f (bounds %.2f, %.2f)%n", elo0, elo1,
+                getLogLikelihoodRatio(), Math.log(BETA / (1 - ALPHA)), Math.log((1 - BETA) / ALPHA)));
+        text.append(decision != null ? decision : "no decision, play more games").append('\n');
+        return text.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("usage: java Tournament <policy a> <policy b> [max games] [threads] [move budget ms]"
+                    + " [elo0] [elo1] [seed]");
+            return;
+        }
+        int maxPairs = (args.length > 2 ? Integer.parseInt(args[2]) : 10000) / 2;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        long budget = args.length > 4 ? Long.parseLong(args[4]) : 100;
+        double elo0 = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+        double elo1 = args.length > 6 ? Double.parseDouble(args[6]) : 10;
+        long seed = args.length > 7 ? Long.parseLong(args[7]) : System.nanoTime();
+
+        Tournament tournament = new Tournament(args[0], args[1], budget, elo0, elo1);
+        AtomicLong next = new AtomicLong();
+        long start = System.nanoTime();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            results.add(workers.submit(() -> {
+                BoardController game = new BoardAdapter();
+                MovePolicy a = GameSimulator.createPolicy(args[0]);
+                MovePolicy b = GameSimulator.createPolicy(args[1]);
+                for (long pair; tournament.decision == null && (pair = next.getAndIncrement()) < maxPairs;) {
+                    tournament.playPair(game, a, b, seed + pair * 3);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : results) {
+            f.get();
+        }
+        workers.shutdown();
+
+        System.out.printf("seed %d, %.1f s%n", seed, (System.nanoTime() - start) / 1e9);
+        System.out.print(tournament.report());
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+/**
+ * Part in MVC design pattern: Controller
+ * Purpose: play random games or read recorded games, replay them through
+ * Board and write every position with the game result as fixed width
+ * records (see PositionCodec) to shard files for training.
+ * a position goes to shard (hash % shards), and positions already written
+ * to a shard with the same result are skipped using a bounded hash table,
+ * so the heap stays the same size however many games are exported. a
+ * position reached in games with different results is written once per
+ * result, so its label is not just the result of the first game. positions are written in
+ * the canonical form of Symmetry, so a position and its mirror are one
+ *
+ * usage:
+ * java TrainingExporter <outputDir> <shards> selfplay <games> [threads] [seed]
+ * java TrainingExporter <outputDir> <shards> replay <gamesFile>
+ *
+ * games file: one game per line, each move is 4 digits fromX fromY toX toY
+ * separated by spaces, e.g. "3133 4142"
+ */
+public class TrainingExporter {
+    public static final int MAX_PLIES = 300; // game is written as unfinished after this
+    private static final int DEDUP_SLOTS = 1 << 23; // shared by all shards, 64 MB of longs
+
+    private final Shard[] shards;
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    public TrainingExporter(Path directory, int shardCount) throws IOException {
+        Files.createDirectories(directory);
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(directory.resolve("positions-" + i + ".bin"),
+                    Integer.highestOneBit(Math.max(DEDUP_SLOTS / shardCount, 1024)));
+        }
+    }
+
+    /**
+     * play one game of random moves from the start position and export it
+     */
+    public void exportRandomGame(Board board, Random random, byte[] records) throws IOException {
+        board.setBoard();
+        PositionCodec.pack(board, 0, records, 0);
+        int plies = 0;
+
+        while (board.getWinner() == 0 && plies < MAX_PLIES) {
+            if (!playRandomMove(board, random)) {
+                break; // no move can be made
+            }
+            plies++;
+            PositionCodec.pack(board, 0, records, plies * PositionCodec.RECORD_SIZE);
+        }
+        writeGame(records, plies + 1, board.getWinner());
+    }
+
+    /**
+     * replay one recorded game from the start position and export it
+     */
+    public void exportRecordedGame(Board board, String line, byte[] records) throws IOException {
+        board.setBoard();
+        PositionCodec.pack(board, 0, records, 0);
+        int plies = 0;
+
+        for (String move : line.trim().split("\\s+")) {
+            if (move.length() != 4 || plies == MAX_PLIES) {
+                break;
+            }
+            if (!board.tryMove(move.charAt(0) - '0', move.charAt(1) - '0', move.charAt(2) - '0',
+                    move.charAt(3) - '0')) {
+                throw new IllegalArgumentException("illegal move " + move + " in game: " + line);
+            }
+            plies++;
+            PositionCodec.pack(board, 0, records, plies * PositionCodec.RECORD_SIZE);
+        }
+        writeGame(records, plies + 1, board.getWinner());
+    }
+
+    /**
+     * make a random move for the current player
+     * returns false if every move is refused
+     */
+    public static boolean playRandomMove(Board board, Random random) {
+        List<Integer[]> moves = board.getLegalMoves();
+        Collections.shuffle(moves, random);
+        for (Integer[] m : moves) {
+            if (board.tryMove(m[0], m[1], m[2], m[3])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * set the result of every position of a game and send them to their shards
+     */
+    private void writeGame(byte[] records, int count, int winner) throws IOException {
+        byte result = (byte) (winner == -1 ? 3 : winner);
+        for (int i = 0; i < count; i++) {
+            int offset = i * PositionCodec.RECORD_SIZE;
+            records[offset + 22] = result;
+            Symmetry.canonicalize(records, offset);
+
+            long hash = PositionCodec.hash(records, offset);
+            Shard shard = shards[(int) Long.remainderUnsigned(hash, shards.length)];
+            if (shard.write(records, offset, PositionCodec.mix(hash ^ result))) { // position and result
+                written.incrementAndGet();
+            } else {
+                duplicates.incrementAndGet();
+            }
+        }
+        games.incrementAndGet();
+    }
+
+    public void close() throws IOException {
+        for (Shard s : shards) {
+            s.close();
+        }
+    }
+
+    public String summary() {
+        return "games: " + games.get() + ", positions written: " + written.get()
+                + ", duplicates skipped: " + duplicates.get();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("usage: java TrainingExporter <outputDir> <shards> selfplay <games> [threads] [seed]");
+            System.out.println("       java TrainingExporter <outputDir> <shards> replay <gamesFile>");
+            return;
+        }
+
+        TrainingExporter exporter = new TrainingExporter(Paths.get(args[0]), Integer.parseInt(args[1]));
+        long start = System.nanoTime();
+
+        if (args[2].equals("selfplay")) {
+            long gameCount = Long.parseLong(args[3]);
+            int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+            long seed = args.length > 5 ? Long.parseLong(args[5]) : System.nanoTime();
+            AtomicLong next = new AtomicLong();
+
+            ExecutorService workers = Executors.newFixedThreadPool(threads);
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                Random random = new Random(seed + t);
+                results.add(workers.submit(() -> {
+                    Board board = new Board();
+                    byte[] records = new byte[(MAX_PLIES + 1) * PositionCodec.RECORD_SIZE];
+                    while (next.getAndIncrement() < gameCount) {
+                        exporter.exportRandomGame(board, random, records);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : results) {
+                f.get();
+            }
+            workers.shutdown();
+        } else {
+            ThreadLocal<Board> boards = ThreadLocal.withInitial(Board::new);
+            ThreadLocal<byte[]> buffers = ThreadLocal
+                    .withInitial(() -> new byte[(MAX_PLIES + 1) * PositionCodec.RECORD_SIZE]);
+            try (Stream<String> lines = Files.lines(Paths.get(args[3]))) {
+                lines.parallel().filter(line -> !line.isBlank()).forEach(line -> {
+                    try {
+                        exporter.exportRecordedGame(boards.get(), line, buffers.get());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        }
+
+        exporter.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(exporter.summary());
+        System.out.printf("%.1f s, %.0f games/s%n", seconds, exporter.games.get() / seconds);
+    }
+}
+
+/**
+ * Part in MVC design pattern: Controller
+ * Purpose: one output file of TrainingExporter with its write buffer and
+ * the hashes of positions already written to it
+ */
+class Shard {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final long[] seen; // open addressing, 0 = empty slot
+    private int seenCount = 0;
+
+    Shard(Path path, int slots) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        seen = new long[slots];
+    }
+
+    /**
+     * buffer a record unless a record with the same key (hash of position
+     * and result) was already written. returns false for a duplicate
+     */
+    synchronized boolean write(byte[] records, int offset, long key) throws IOException {
+        if (!markSeen(key)) {
+            return false;
+        }
+        if (buffer.remaining() < PositionCodec.RECORD_SIZE) {
+            flush();
+        }
+        buffer.put(records, offset, PositionCodec.RECORD_SIZE);
+        return true;
+    }
+
+    /**
+     * add hash to the table (size is a power of 2), returns false if it was already there.
+     * the table is emptied when 3/4 full to keep memory bounded,
+     * so duplicates far apart may be written again
+     */
+    private boolean markSeen(long hash) {
+        if (hash == 0) {
+            hash = 1;
+        }
+        if (seenCount > seen.length / 4 * 3) {
+            Arrays.fill(seen, 0);
+            seenCount = 0;
+        }
+
+        int mask = seen.length - 1;
+        int i = (int) (hash >>> 32) & mask; // the low bits chose the shard, so they are alike here
+        while (seen[i] != 0) {
+            if (seen[i] == hash) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        seen[i] = hash;
+        seenCount++;
+        return true;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    synchronized void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,152 @@
+package talabia.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Part in MVC design pattern: Model
+ * Purpose: JMH benchmarks of the hot paths of Board and Piece on the
+ * positions of BenchmarkCorpus: move generation per piece and per phase,
+ * making and taking back a move (check and win detection included),
+ * notation, loading packed states, save/load and a round trip through
+ * BoardController.
+ * run with the GC profiler for the allocation rate: gradle :jmh:jmh
+ *
+ * JMH needs benchmarks in a package, and a package cannot import the
+ * game's classes from the default package, so each state gets its
+ * operation from BenchmarkCorpus by reflection in its setup. the
+ * measured calls are plain IntSupplier calls
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    /**
+     * operation of BenchmarkCorpus by name, e.g. "getLegalMove.Sun"
+     */
+    static IntSupplier load(String name) throws ReflectiveOperationException {
+        return (IntSupplier) Class.forName("BenchmarkCorpus").getMethod("createBenchmark", String.class)
+                .invoke(null, name);
+    }
+
+    @State(Scope.Thread)
+    public static class PieceMoves {
+        @Param({ "Point", "Hourglass", "Time", "Plus", "Sun" })
+        public String piece;
+        IntSupplier moves;
+
+        @Setup
+        public void setup() throws ReflectiveOperationException {
+            moves = load("getLegalMove." + piece);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Phase {
+        @Param({ "opening", "middlegame", "endgame" })
+        public String phase;
+        IntSupplier moves;
+        IntSupplier moveUndo;
+
+        @Setup
+        public void setup() throws ReflectiveOperationException {
+            moves = load("getLegalMoves." + phase);
+            moveUndo = load("moveUndo." + phase);
+        }
+    }
+
+    /**
+     * positions where the player to move is in check, so every move
+     * is tested for leaving the Sun in check
+     */
+    @State(Scope.Thread)
+    public static class InCheck {
+        IntSupplier moveUndo;
+
+        @Setup
+        public void setup() throws ReflectiveOperationException {
+            moveUndo = load("moveUndo.inCheck");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Game {
+        IntSupplier notation;
+        IntSupplier stateLoad;
+        IntSupplier saveLoad;
+        IntSupplier controllerRoundTrip;
+
+        @Setup
+        public void setup() throws ReflectiveOperationException {
+            notation = load("notation");
+            stateLoad = load("stateLoad");
+            saveLoad = load("saveLoad");
+            controllerRoundTrip = load("controllerRoundTrip");
+        }
+    }
+
+    /**
+     * getLegalMove of one piece
+     */
+    @Benchmark
+    public int getLegalMove(PieceMoves state) {
+        return state.moves.getAsInt();
+    }
+
+    /**
+     * moves of every piece of the player to move in one position
+     */
+    @Benchmark
+    public int getLegalMoves(Phase state) {
+        return state.moves.getAsInt();
+    }
+
+    /**
+     * tryMove and undoMove of one move
+     */
+    @Benchmark
+    public int moveUndo(Phase state) {
+        return state.moveUndo.getAsInt();
+    }
+
+    @Benchmark
+    public int moveUndoInCheck(InCheck state) {
+        return state.moveUndo.getAsInt();
+    }
+
+    /**
+     * setNotation and appendNotation of one position
+     */
+    @Benchmark
+    public int notation(Game state) {
+        return state.notation.getAsInt();
+    }
+
+    /**
+     * setState of a packed state, a different game each time
+     */
+    @Benchmark
+    public int stateLoad(Game state) {
+        return state.stateLoad.getAsInt();
+    }
+
+    /**
+     * write a save file and read it back
+     */
+    @Benchmark
+    public int saveLoad(Game state) {
+        return state.saveLoad.getAsInt();
+    }
+
+    /**
+     * select, move and undo through BoardController like the view does
+     */
+    @Benchmark
+    public int controllerRoundTrip(Game state) {
+        return state.controllerRoundTrip.getAsInt();
+    }
+}